@@ -0,0 +1,80 @@
+package sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Loads the bundled .sud boards for the benchmarks.
+ */
+final class BenchmarkBoards
+{
+    private BenchmarkBoards()
+    {
+        // Empty
+    }
+
+    /**
+     * @param name the board file without its .sud extension
+     * @return the board, read from the directory named by the sudoku.boards
+     * system property, or from the parent directory by default
+     * @throws IOException
+     */
+    static int[][] read(String name) throws IOException
+    {
+        File dir = new File(System.getProperty("sudoku.boards", ".."));
+        return SudokuUtil.readInBoard(new File(dir, name + ".sud").getPath(), 9);
+    }
+
+    /**
+     * Makes a board of any size from the pattern solution, with its digits
+     * and the rows of each band shuffled, and a fraction of the cells
+     * blanked.  Such boards usually have several solutions, which does
+     * not matter for timing.
+     * @param blockWidth k for a k * k by k * k board
+     * @param blankFraction chance of each cell being left empty
+     * @param seed
+     */
+    static int[][] generate(int blockWidth, double blankFraction, long seed)
+    {
+        int n = blockWidth * blockWidth;
+        Random random = new Random(seed);
+        int[] digits = shuffled(n, random);
+        int[][] board = new int[n][n];
+        for (int band = 0; band < blockWidth; band++)
+        {
+            int[] rows = shuffled(blockWidth, random);
+            for (int r = 0; r < blockWidth; r++)
+            {
+                int i = band * blockWidth + r;
+                int patternRow = band * blockWidth + rows[r] - 1;
+                for (int j = 0; j < n; j++)
+                {
+                    int value = (blockWidth * (patternRow % blockWidth) + patternRow / blockWidth + j) % n;
+                    board[i][j] = random.nextDouble() < blankFraction ? 0 : digits[value];
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * @return the numbers 1 to count in random order
+     */
+    private static int[] shuffled(int count, Random random)
+    {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            values[i] = i + 1;
+        }
+        for (int i = count - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,64 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Propagation of the givens and whole solves with BITBOARD_ENGINE, to set
+ * against PropagationBenchmark and SolveBenchmark.
+ *
+ * The fork runs with jdk.incubator.vector so that the vector kernel is
+ * measured; add -jvmArgsAppend -Dsudoku.bitboard.vector=false to measure
+ * the scalar one.  Loading the planes needs no setup per call, so unlike
+ * PropagationBenchmark the propagate numbers hold down to nanoseconds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BitboardBenchmark
+{
+    @Param({ "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster",
+            "tarek071223170000-052", "goldenNugget", "minimum1", "minimum50", "nearWorstCase" })
+    public String board;
+
+    private int[][] problem;
+    private final int[] planes = new int[BitboardSolver.PLANES];
+    private final int[] scratch = new int[BitboardSolver.PLANES];
+    private SudokuSolver solver;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        problem = BenchmarkBoards.read(board);
+        solver = new SudokuSolver();
+        solver.setEngine(SudokuSolver.BITBOARD_ENGINE);
+    }
+
+    @Benchmark
+    public int[] propagate()
+    {
+        BitboardSolver.propagate(problem, planes, scratch);
+        return planes;
+    }
+
+    @Benchmark
+    public int[][] solve() throws SudokuSolver.InvalidSudokuBoardException
+    {
+        return solver.solve(problem);
+    }
+}
@@ -0,0 +1,67 @@
+package sudoku;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How solve time grows with the size of the board, from 4x4 up to 36x36.
+ *
+ * Each invocation solves the next of a fixed set of generated boards of
+ * the given block width, so that the result is not down to one lucky
+ * board.  With 40% of the cells blank the boards are mostly solved by
+ * propagation; near half blank they get much harder for every engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardSizeBenchmark
+{
+    private static final int BOARDS = 16;
+
+    @Param({ "2", "3", "4", "5", "6" })
+    public int blockWidth;
+
+    @Param({ "0.4" })
+    public double blankFraction;
+
+    @Param({ "AC", "DLX" })
+    public String engine;
+
+    private int[][][] boards;
+    private int next;
+    private SudokuSolver solver;
+
+    @Setup
+    public void setUp()
+    {
+        boards = new int[BOARDS][][];
+        for (int i = 0; i < BOARDS; i++)
+        {
+            boards[i] = BenchmarkBoards.generate(blockWidth, blankFraction, i);
+        }
+        solver = new SudokuSolver();
+        solver.setEngine("DLX".equals(engine) ? SudokuSolver.DANCING_LINKS_ENGINE : SudokuSolver.ARC_CONSISTENCY_ENGINE);
+    }
+
+    @Benchmark
+    public int[][] solve() throws SudokuSolver.InvalidSudokuBoardException
+    {
+        int[][] board = boards[next];
+        next = (next + 1) % BOARDS;
+        return solver.solve(board);
+    }
+}
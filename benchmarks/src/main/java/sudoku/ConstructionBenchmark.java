@@ -0,0 +1,46 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building a SudokuProblem from a board with sudokuProblemWithBoard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructionBenchmark
+{
+    @Param({ "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster",
+            "tarek071223170000-052", "goldenNugget", "minimum1", "minimum50", "nearWorstCase" })
+    public String board;
+
+    private int[][] problem;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        problem = BenchmarkBoards.read(board);
+    }
+
+    @Benchmark
+    public Object sudokuProblemWithBoard()
+    {
+        return SudokuSolver.sudokuProblemWithBoard(problem);
+    }
+}
@@ -0,0 +1,59 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the initial propagation alone: makeConsistent on a freshly built
+ * problem, without any domain splitting.
+ *
+ * The problem has to be rebuilt before every call, so this uses a
+ * per-invocation setup; treat results far below a microsecond with care.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropagationBenchmark
+{
+    @Param({ "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster",
+            "tarek071223170000-052", "goldenNugget", "minimum1", "minimum50", "nearWorstCase" })
+    public String board;
+
+    private int[][] problem;
+    private SudokuSolver.SudokuProblem sp;
+
+    @Setup(Level.Trial)
+    public void readBoard() throws IOException
+    {
+        problem = BenchmarkBoards.read(board);
+    }
+
+    @Setup(Level.Invocation)
+    public void buildProblem()
+    {
+        sp = SudokuSolver.sudokuProblemWithBoard(problem);
+    }
+
+    @Benchmark
+    public long[] makeConsistent()
+    {
+        sp.makeConsistent();
+        return sp.getDomains();
+    }
+}
@@ -0,0 +1,48 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and average time of a whole SudokuSolver.solve on each bundled board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark
+{
+    @Param({ "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster",
+            "tarek071223170000-052", "goldenNugget", "minimum1", "minimum50", "nearWorstCase" })
+    public String board;
+
+    private int[][] problem;
+    private SudokuSolver solver;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        problem = BenchmarkBoards.read(board);
+        solver = new SudokuSolver();
+    }
+
+    @Benchmark
+    public int[][] solve() throws SudokuSolver.InvalidSudokuBoardException
+    {
+        return solver.solve(problem);
+    }
+}
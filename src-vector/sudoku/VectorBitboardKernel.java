@@ -0,0 +1,179 @@
+package sudoku;
+
+import static sudoku.BitboardSolver.BAND;
+import static sudoku.BitboardSolver.BOX;
+import static sudoku.BitboardSolver.ROW;
+import static sudoku.BitboardSolver.STRIDE;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The unit step of BitboardSolver with one digit per vector lane, so that
+ * the rows, columns and boxes of all nine planes are handled by the same
+ * instructions.
+ *
+ * This class needs the jdk.incubator.vector module, both to compile and
+ * to run, so it lives in a source root of its own, built on top of src:
+ *
+ *   javac --add-modules jdk.incubator.vector -cp bin -d bin src-vector/sudoku/*.java
+ *
+ * BitboardSolver only loads it by name, so the rest of the solver builds
+ * and runs without it, with the scalar kernel.
+ *
+ * The work is split into methods that pass their results through the
+ * arrays and never take or return a vector: C2 stops inlining once a
+ * compiled method grows too large, and a vector passed to a call it did
+ * not inline is boxed on the heap.
+ */
+final class VectorBitboardKernel implements BitboardSolver.Kernel
+{
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    /**
+     * BAND in the lanes of the padding digits, or'ed in so that their empty
+     * planes do not count as a unit with no place left.
+     */
+    private static final int[] PADDING = padding();
+
+    /**
+     * @throws UnsupportedOperationException if the vectors of the platform
+     * do not fit a band of STRIDE digits
+     */
+    VectorBitboardKernel()
+    {
+        if (LANES > STRIDE)
+        {
+            throw new UnsupportedOperationException(LANES + " lanes");
+        }
+    }
+
+    private static int[] padding()
+    {
+        int[] padding = new int[3 * STRIDE];
+        for (int i = 0; i < padding.length; i++)
+        {
+            padding[i] = i % STRIDE < 9 ? 0 : BAND;
+        }
+        return padding;
+    }
+
+    public int hiddenSingles(int[] planes, int[] scratch)
+    {
+        Arrays.fill(scratch, 0);
+        for (int d = 0; d < 9; d += LANES)
+        {
+            for (int i = d; i < 3 * STRIDE; i += STRIDE)
+            {
+                for (int k = 0; k < 3; k++)
+                {
+                    if (!inUnit(planes, scratch, i, ROW << 9 * k) || !inUnit(planes, scratch, i, BOX << 3 * k))
+                    {
+                        return -1;
+                    }
+                }
+            }
+            if (!inColumns(planes, scratch, d))
+            {
+                return -1;
+            }
+        }
+        return apply(planes, scratch);
+    }
+
+    /**
+     * Adds the cells alone in a row or box for their digit to scratch.
+     * @param i index of the band of the first digit of a vector
+     * @param unit cells of a row or box of the band
+     * @return false if the unit has no place left for a digit
+     */
+    private static boolean inUnit(int[] planes, int[] scratch, int i, int unit)
+    {
+        IntVector x = IntVector.fromArray(SPECIES, planes, i).and(unit);
+        if (x.or(IntVector.fromArray(SPECIES, PADDING, i)).compare(VectorOperators.EQ, 0).anyTrue())
+        {
+            return false;
+        }
+        // -1 in the lanes with at most one cell, else 0
+        IntVector alone = x.and(x.sub(1)).add(BAND).lanewise(VectorOperators.LSHR, 27).sub(1);
+        IntVector.fromArray(SPECIES, scratch, i).or(x.and(alone)).intoArray(scratch, i);
+        return true;
+    }
+
+    /**
+     * Adds the cells alone in their column for their digit to scratch.
+     * The rows of the bands are first or'ed three by three, one from each
+     * band, and a column has two cells if two rows of such a group or two
+     * of the groups have one.
+     * @param d the first digit of a vector
+     * @return false if a column has no place left for a digit
+     */
+    private static boolean inColumns(int[] planes, int[] scratch, int d)
+    {
+        IntVector p0 = IntVector.fromArray(SPECIES, planes, d);
+        IntVector p1 = IntVector.fromArray(SPECIES, planes, STRIDE + d);
+        IntVector p2 = IntVector.fromArray(SPECIES, planes, 2 * STRIDE + d);
+        IntVector any = p0.or(p1).or(p2);
+        IntVector any9 = any.lanewise(VectorOperators.LSHR, 9);
+        IntVector any18 = any.lanewise(VectorOperators.LSHR, 18);
+        IntVector once = any.or(any9).or(any18).and(ROW);
+        if (once.or(IntVector.fromArray(SPECIES, PADDING, d)).and(ROW).compare(VectorOperators.NE, ROW).anyTrue())
+        {
+            return false;
+        }
+        IntVector twice = p0.and(p1).or(p2.and(p0.or(p1)));
+        twice = twice.or(twice.lanewise(VectorOperators.LSHR, 9)).or(twice.lanewise(VectorOperators.LSHR, 18))
+                .or(any.and(any9)).or(any18.and(any.or(any9)));
+        IntVector onlyOnce = once.and(twice.not());
+        onlyOnce = onlyOnce.or(onlyOnce.lanewise(VectorOperators.LSHL, 9))
+                .or(onlyOnce.lanewise(VectorOperators.LSHL, 18));
+        IntVector.fromArray(SPECIES, scratch, d).or(p0.and(onlyOnce)).intoArray(scratch, d);
+        IntVector.fromArray(SPECIES, scratch, STRIDE + d).or(p1.and(onlyOnce)).intoArray(scratch, STRIDE + d);
+        IntVector.fromArray(SPECIES, scratch, 2 * STRIDE + d).or(p2.and(onlyOnce)).intoArray(scratch, 2 * STRIDE + d);
+        return true;
+    }
+
+    /**
+     * Clears the other digits from the cells in scratch.
+     * @return 1 if a plane changed, else 0
+     */
+    private static int apply(int[] planes, int[] scratch)
+    {
+        int hidden0 = 0;
+        int hidden1 = 0;
+        int hidden2 = 0;
+        for (int d = 0; d < 9; d += LANES)
+        {
+            hidden0 |= IntVector.fromArray(SPECIES, scratch, d).reduceLanes(VectorOperators.OR);
+            hidden1 |= IntVector.fromArray(SPECIES, scratch, STRIDE + d).reduceLanes(VectorOperators.OR);
+            hidden2 |= IntVector.fromArray(SPECIES, scratch, 2 * STRIDE + d).reduceLanes(VectorOperators.OR);
+        }
+        boolean changed = false;
+        for (int d = 0; d < 9; d += LANES)
+        {
+            changed |= clear(planes, scratch, d, ~hidden0);
+            changed |= clear(planes, scratch, STRIDE + d, ~hidden1);
+            changed |= clear(planes, scratch, 2 * STRIDE + d, ~hidden2);
+        }
+        return changed ? 1 : 0;
+    }
+
+    /**
+     * @return true if a bit was cleared from the band
+     */
+    private static boolean clear(int[] planes, int[] scratch, int i, int others)
+    {
+        IntVector p = IntVector.fromArray(SPECIES, planes, i);
+        IntVector q = p.and(IntVector.fromArray(SPECIES, scratch, i).or(others));
+        q.intoArray(planes, i);
+        return q.compare(VectorOperators.NE, p).anyTrue();
+    }
+
+    public String toString()
+    {
+        return "vector";
+    }
+}
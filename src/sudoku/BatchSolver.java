@@ -0,0 +1,447 @@
+package sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves a corpus of Sudoku boards, one per line in the format read by
+ * SudokuUtil.parseBoardDots, on every core.
+ *
+ * The input is read in chunks, from a memory-mapped file when run from
+ * the command line, or from a file in the format of PackedBoards.  The
+ * boards of a chunk are solved as fork/join tasks, so idle workers steal
+ * the remaining ranges, and the solutions are then written out in input
+ * order, one per line.  A board that cannot be solved gives a line with
+ * the reason instead.
+ *
+ * Usage: BatchSolver input output [threads]
+ * where input is a packed board file or has one dot string per line
+ */
+public class BatchSolver
+{
+    /**
+     * Boards read, solved and written per round, which bounds the memory
+     * used whatever the size of the corpus.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Ranges of at most this many boards are solved without splitting further.
+     */
+    private static final int GRAIN = 16;
+
+    private final SudokuSolver solver;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param solver solves each board; it must not be reconfigured while a batch runs
+     * @param pool the pool the boards are solved in
+     */
+    public BatchSolver(SudokuSolver solver, ForkJoinPool pool)
+    {
+        this.solver = solver;
+        this.pool = pool;
+    }
+
+    public static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 2)
+        {
+            System.err.println("Usage: BatchSolver input output [threads]");
+            System.exit(1);
+        }
+        int threads = argv.length > 2 ? Integer.parseInt(argv[2]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        BatchSolver batch = new BatchSolver(new SudokuSolver(), pool);
+        Path path = Paths.get(argv[0]);
+        BufferedWriter out = new BufferedWriter(new FileWriter(argv[1]));
+        Report report;
+        try
+        {
+            if (PackedBoards.isPacked(path))
+            {
+                PackedBoards.Reader in = new PackedBoards.Reader(Files.newInputStream(path));
+                try
+                {
+                    report = batch.solve(in, out);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            else
+            {
+                MappedBoardReader in = MappedBoardReader.open(path, MappedBoardReader.Format.DOTS, 9);
+                try
+                {
+                    report = batch.solve(in, out);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+            pool.shutdown();
+        }
+        System.out.println(report);
+    }
+
+    /**
+     * Solves every board read from in and writes the results to out in the same order.
+     * @param in one board per line; blank lines are skipped
+     * @param out receives one line per board
+     * @return throughput and latency figures for the whole run
+     * @throws IOException
+     */
+    public Report solve(Reader in, Writer out) throws IOException
+    {
+        final BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        return solve(new ChunkSource()
+        {
+            public int read(int[][][] boards) throws IOException
+            {
+                int count = 0;
+                String line;
+                while (count < boards.length && (line = reader.readLine()) != null)
+                {
+                    if (line.trim().isEmpty())
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        boards[count] = SudokuUtil.parseBoardDots(line, 9);
+                    }
+                    catch (IOException e)
+                    {
+                        boards[count] = null;
+                    }
+                    count++;
+                }
+                return count;
+            }
+        }, out);
+    }
+
+    /**
+     * Solves every board of a mapped corpus and writes the results to out in the same order.
+     * @param in the boards to solve
+     * @param out receives one line per board
+     * @return throughput and latency figures for the whole run
+     * @throws IOException
+     */
+    public Report solve(MappedBoardReader in, Writer out) throws IOException
+    {
+        final MappedBoardReader.Cursor cursor = in.cursor();
+        return solve(new ChunkSource()
+        {
+            private final int[] cells = new int[81];
+
+            public int read(int[][][] boards) throws IOException
+            {
+                int count = 0;
+                while (count < boards.length)
+                {
+                    try
+                    {
+                        if (!cursor.next(cells))
+                        {
+                            break;
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // the cursor is past the malformed line
+                        boards[count++] = null;
+                        continue;
+                    }
+                    int[][] board = new int[9][9];
+                    for (int i = 0; i < 9; i++)
+                    {
+                        System.arraycopy(cells, 9 * i, board[i], 0, 9);
+                    }
+                    boards[count++] = board;
+                }
+                return count;
+            }
+        }, out);
+    }
+
+    /**
+     * Solves every board of a packed board stream and writes the results to out in the same order.
+     * @param in the boards to solve
+     * @param out receives one line per board
+     * @return throughput and latency figures for the whole run
+     * @throws IOException also if a board in the stream is malformed, or
+     * the boards are not 9x9
+     */
+    public Report solve(final PackedBoards.Reader in, Writer out) throws IOException
+    {
+        if (in.getBoardSize() != 9)
+        {
+            throw new IOException("Packed boards are " + in.getBoardSize() + "x" + in.getBoardSize() + ", not 9x9");
+        }
+        return solve(new ChunkSource()
+        {
+            public int read(int[][][] boards) throws IOException
+            {
+                int count = 0;
+                int[][] board;
+                while (count < boards.length && (board = in.read()) != null)
+                {
+                    boards[count++] = board;
+                }
+                return count;
+            }
+        }, out);
+    }
+
+    /**
+     * Where the boards of a batch come from, one chunk at a time.
+     */
+    private interface ChunkSource
+    {
+        /**
+         * @param boards filled from index 0 on; null for a line that is not a board
+         * @return the number of boards read, 0 at the end of the input
+         */
+        int read(int[][][] boards) throws IOException;
+    }
+
+    private Report solve(ChunkSource source, Writer out) throws IOException
+    {
+        int[][][] boards = new int[CHUNK_SIZE][][];
+        String[] results = new String[CHUNK_SIZE];
+        boolean[] solved = new boolean[CHUNK_SIZE];
+        long[] latencies = new long[CHUNK_SIZE];
+        LatencyHistogram histogram = new LatencyHistogram();
+        int total = 0;
+        int failures = 0;
+        long start = System.nanoTime();
+        int count;
+        while ((count = source.read(boards)) > 0)
+        {
+            pool.invoke(new SolveRange(boards, results, solved, latencies, 0, count));
+            for (int i = 0; i < count; i++)
+            {
+                if (!solved[i])
+                {
+                    failures++;
+                }
+                histogram.record(latencies[i]);
+                out.write(results[i]);
+                out.write('\n');
+            }
+            total += count;
+        }
+        out.flush();
+        long elapsed = System.nanoTime() - start;
+        return new Report(total, failures, elapsed, histogram);
+    }
+
+    /**
+     * Solves boards[from, to) into results[from, to), splitting the range
+     * in halves until it is small enough.  A board that cannot be solved
+     * gets the reason as its result and false in solved, also when the
+     * engine fails with a runtime exception, and the rest of the range is
+     * still solved.  The solve time of each board goes to latencies.
+     */
+    private final class SolveRange extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final int[][][] boards;
+        private final String[] results;
+        private final boolean[] solved;
+        private final long[] latencies;
+        private final int from;
+        private final int to;
+
+        SolveRange(int[][][] boards, String[] results, boolean[] solved, long[] latencies, int from, int to)
+        {
+            this.boards = boards;
+            this.results = results;
+            this.solved = solved;
+            this.latencies = latencies;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= GRAIN)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    long start = System.nanoTime();
+                    try
+                    {
+                        if (boards[i] == null)
+                        {
+                            results[i] = "Invalid board";
+                            solved[i] = false;
+                        }
+                        else
+                        {
+                            results[i] = SudokuUtil.formatBoardDots(solver.solve(boards[i]));
+                            solved[i] = true;
+                        }
+                    }
+                    catch (SudokuSolver.InvalidSudokuBoardException e)
+                    {
+                        results[i] = e.getMessage();
+                        solved[i] = false;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        results[i] = e.toString();
+                        solved[i] = false;
+                    }
+                    latencies[i] = System.nanoTime() - start;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveRange(boards, results, solved, latencies, from, middle),
+                    new SolveRange(boards, results, solved, latencies, middle, to));
+        }
+    }
+
+    /**
+     * Counts of solve times in buckets whose width grows with the time,
+     * sixteen per power of two, so that a percentile is within 1/16 of the
+     * exact one in a fixed amount of memory whatever the number of boards.
+     */
+    static final class LatencyHistogram
+    {
+        private static final int SUB_BUCKETS = 16;
+        /**
+         * Buckets 0 to 15 hold one value each; each following group of
+         * SUB_BUCKETS covers a power of two, up to Long.MAX_VALUE.
+         */
+        private final long[] counts = new long[60 * SUB_BUCKETS];
+        private long total;
+
+        void record(long nanos)
+        {
+            counts[bucket(Math.max(0, nanos))]++;
+            total++;
+        }
+
+        /**
+         * @param percent between 0 and 100
+         * @return the largest time of the bucket holding the time that this
+         * percentage of the recorded ones stayed within, 0 if none were
+         */
+        long percentile(double percent)
+        {
+            if (total == 0)
+            {
+                return 0;
+            }
+            long rank = Math.max(1, Math.min(total, (long) Math.ceil(percent / 100 * total)));
+            long seen = 0;
+            int i = 0;
+            while ((seen += counts[i]) < rank)
+            {
+                i++;
+            }
+            return largest(i);
+        }
+
+        private static int bucket(long value)
+        {
+            if (value < SUB_BUCKETS)
+            {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - 3) * SUB_BUCKETS + (int) (value >>> (exponent - 4) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @return the largest value that falls in a bucket
+         */
+        private static long largest(int bucket)
+        {
+            if (bucket < SUB_BUCKETS)
+            {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long smallest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return smallest + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * Figures for one batch run.
+     */
+    public static final class Report
+    {
+        private final int puzzles;
+        private final int failures;
+        private final long elapsedNanos;
+        private final LatencyHistogram latencies;
+
+        Report(int puzzles, int failures, long elapsedNanos, LatencyHistogram latencies)
+        {
+            this.puzzles = puzzles;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        public int getPuzzles()
+        {
+            return puzzles;
+        }
+
+        /**
+         * @return the number of boards that were invalid or had no (unique) solution
+         */
+        public int getFailures()
+        {
+            return failures;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        public double getPuzzlesPerSecond()
+        {
+            return elapsedNanos == 0 ? 0 : puzzles * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param percent between 0 and 100
+         * @return the solve time in nanoseconds that this percentage of
+         * boards stayed within, rounded up by at most 1/16
+         */
+        public long getLatencyPercentile(double percent)
+        {
+            return latencies.percentile(percent);
+        }
+
+        public String toString()
+        {
+            return String.format("%d puzzles (%d failed) in %.3f s: %.0f puzzles/s, p50 %.1f us, p99 %.1f us",
+                    puzzles, failures, elapsedNanos / 1e9, getPuzzlesPerSecond(),
+                    getLatencyPercentile(50) / 1e3, getLatencyPercentile(99) / 1e3);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package sudoku;
+
+/**
+ * Solves 9x9 boards on digit planes: one bitboard per digit holding the
+ * cells where the digit is still possible, instead of a domain per cell.
+ *
+ * A plane is kept as three 27 bit words, one per band of three rows, with
+ * bit 9 * r + c for row r of the band and column c.  With that layout a
+ * row, a column or a box of a plane is a fixed pattern of bits.
+ * Propagation alternates two steps until neither changes anything:
+ *
+ * - every cell left with one candidate clears that digit from its peers,
+ *   through a precomputed mask of the peers of each cell;
+ * - every row, column and box with one place left for a digit keeps only
+ *   that digit there, and one with no place left is a contradiction.
+ *
+ * The second step goes over whole units of all nine planes at once, which
+ * a Kernel does either with one digit per lane of jdk.incubator.vector or
+ * one digit after another.  The vector kernel, in src-vector, is used when
+ * it was built, the JVM runs with --add-modules jdk.incubator.vector and
+ * the system property sudoku.bitboard.vector is not false.
+ *
+ * The search splits the first cell with two candidates left, or else the
+ * one with the fewest, on every candidate in turn.  Boards of other sizes
+ * are solved by ARC_CONSISTENCY_ENGINE.
+ */
+public class BitboardSolver implements SudokuSolver.Engine
+{
+    /**
+     * Distance between the words of one band of consecutive digits.  The
+     * digits past the ninth are padding, kept at 0, so that a band fills
+     * whole vectors of up to 16 lanes.
+     */
+    static final int STRIDE = 16;
+    /**
+     * Length of the planes of a board: planes[band * STRIDE + digit - 1]
+     * is one band of the plane of a digit.
+     */
+    static final int PLANES = 3 * STRIDE;
+    static final int BAND = (1 << 27) - 1;
+    static final int ROW = 0x1ff;
+    /**
+     * The first box of a band; box j is BOX << (3 * j).
+     */
+    static final int BOX = 7 | 7 << 9 | 7 << 18;
+
+    /**
+     * PEERS[3 * cell + band] is the word of a band holding the cells that
+     * share a row, column or box with the cell, not the cell itself.
+     */
+    private static final int[] PEERS = peers();
+
+    private static final Kernel KERNEL = loadKernel();
+
+    /**
+     * The unit step of the propagation over all nine digit planes.
+     */
+    interface Kernel
+    {
+        /**
+         * Finds the rows, columns and boxes with one place left for a
+         * digit and clears the other digits from those places.
+         * @param planes the planes of a board, narrowed in place
+         * @param scratch PLANES ints the kernel may overwrite
+         * @return -1 if a unit has no place left for a digit, 0 if no
+         * plane changed, 1 if some did
+         */
+        int hiddenSingles(int[] planes, int[] scratch);
+    }
+
+    public int[][] solve(SudokuSolver solver, int[][] board) throws SudokuSolver.InvalidSudokuBoardException
+    {
+        if (board.length != 9)
+        {
+            return SudokuSolver.ARC_CONSISTENCY_ENGINE.solve(solver, board);
+        }
+        Search search = new Search(solver.isCheckUniqueness() ? 2 : 1);
+        if (load(board, search.level(0)))
+        {
+            search.search(0);
+        }
+        if (search.solutions == 0)
+        {
+            throw new SudokuSolver.InvalidSudokuBoardException("No solution");
+        }
+        if (search.solutions > 1)
+        {
+            throw new SudokuSolver.InvalidSudokuBoardException("Multiple solutions");
+        }
+        return toBoard(search.firstSolution);
+    }
+
+    /**
+     * @return "vector" or "scalar", whichever kernel propagates
+     */
+    public static String getKernelName()
+    {
+        return KERNEL.toString();
+    }
+
+    /**
+     * Propagates the givens of a 9x9 board without searching.
+     * @param board
+     * @param planes receives the planes left by the propagation
+     * @param scratch PLANES ints of working space
+     * @return false if the board turned out to have no solution
+     */
+    static boolean propagate(int[][] board, int[] planes, int[] scratch)
+    {
+        return load(board, planes) && propagate(planes, scratch);
+    }
+
+    /**
+     * Runs both steps of the propagation until nothing changes.
+     * @return false if the board turned out to have no solution, which
+     * leaves the planes partly propagated
+     */
+    private static boolean propagate(int[] planes, int[] scratch)
+    {
+        int done0 = 0;
+        int done1 = 0;
+        int done2 = 0;
+        while (true)
+        {
+            while (true)
+            {
+                int s0 = singles(planes, 0);
+                int s1 = singles(planes, STRIDE);
+                int s2 = singles(planes, 2 * STRIDE);
+                if ((s0 | s1 | s2) < 0)
+                {
+                    return false;
+                }
+                s0 &= ~done0;
+                s1 &= ~done1;
+                s2 &= ~done2;
+                if ((s0 | s1 | s2) == 0)
+                {
+                    break;
+                }
+                if (!clearPeers(planes, 0, s0) || !clearPeers(planes, 1, s1) || !clearPeers(planes, 2, s2))
+                {
+                    return false;
+                }
+                done0 |= s0;
+                done1 |= s1;
+                done2 |= s2;
+            }
+            int changed = KERNEL.hiddenSingles(planes, scratch);
+            if (changed <= 0)
+            {
+                return changed == 0;
+            }
+        }
+    }
+
+    /**
+     * Clears the digit of each of the given cells from its peers.
+     * @param band
+     * @param cells the word of the band with the cells, which had one
+     * candidate each
+     * @return false if one of them lost it to an earlier one
+     */
+    private static boolean clearPeers(int[] planes, int band, int cells)
+    {
+        for (int rest = cells; rest != 0; rest &= rest - 1)
+        {
+            int bit = rest & -rest;
+            int d = 0;
+            while (d < 9 && (planes[band * STRIDE + d] & bit) == 0)
+            {
+                d++;
+            }
+            if (d == 9)
+            {
+                return false;
+            }
+            int peers = 3 * (band * 27 + Integer.numberOfTrailingZeros(bit));
+            planes[d] &= ~PEERS[peers];
+            planes[STRIDE + d] &= ~PEERS[peers + 1];
+            planes[2 * STRIDE + d] &= ~PEERS[peers + 2];
+        }
+        return true;
+    }
+
+    /**
+     * @return the cells of a band with exactly one candidate, or -1 if
+     * one has none
+     */
+    private static int singles(int[] planes, int word)
+    {
+        int once = 0;
+        int twice = 0;
+        for (int d = 0; d < 9; d++)
+        {
+            twice |= once & planes[word + d];
+            once |= planes[word + d];
+        }
+        return once == BAND ? once & ~twice : -1;
+    }
+
+    /**
+     * Sets the planes to the givens of a board.
+     * @return false if a given is out of range
+     */
+    private static boolean load(int[][] board, int[] planes)
+    {
+        for (int digit = 0; digit < STRIDE; digit++)
+        {
+            int full = digit < 9 ? BAND : 0;
+            planes[digit] = full;
+            planes[STRIDE + digit] = full;
+            planes[2 * STRIDE + digit] = full;
+        }
+        for (int i = 0; i < 9; i++)
+        {
+            if (board[i].length != 9)
+            {
+                throw new IllegalArgumentException("Board is not 9x9");
+            }
+            for (int j = 0; j < 9; j++)
+            {
+                int value = board[i][j];
+                if (value < 0 || value > 9)
+                {
+                    return false;
+                }
+                if (value != 0)
+                {
+                    place(planes, i * 9 + j, value - 1);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every other digit from a cell.
+     * @param cell row * 9 + col
+     * @param digit from 0
+     */
+    private static void place(int[] planes, int cell, int digit)
+    {
+        int word = cell / 27 * STRIDE;
+        int bit = 1 << (cell % 27);
+        for (int d = 0; d < 9; d++)
+        {
+            if (d != digit)
+            {
+                planes[word + d] &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * @return the cell to split: the first with two candidates, else the
+     * first with the fewest, or -1 if every cell has one
+     */
+    private static int chooseCell(int[] planes)
+    {
+        int best = -1;
+        int fewest = 10;
+        for (int band = 0; band < 3; band++)
+        {
+            int word = band * STRIDE;
+            int once = 0;
+            int twice = 0;
+            int thrice = 0;
+            for (int d = 0; d < 9; d++)
+            {
+                thrice |= twice & planes[word + d];
+                twice |= once & planes[word + d];
+                once |= planes[word + d];
+            }
+            if ((twice & ~thrice) != 0)
+            {
+                return band * 27 + Integer.numberOfTrailingZeros(twice & ~thrice);
+            }
+            for (int rest = thrice; rest != 0 && fewest > 3; rest &= rest - 1)
+            {
+                int bit = rest & -rest;
+                int count = 0;
+                for (int d = 0; d < 9; d++)
+                {
+                    if ((planes[word + d] & bit) != 0)
+                    {
+                        count++;
+                    }
+                }
+                if (count < fewest)
+                {
+                    fewest = count;
+                    best = band * 27 + Integer.numberOfTrailingZeros(bit);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int[][] toBoard(int[] planes)
+    {
+        int[][] board = new int[9][9];
+        for (int cell = 0; cell < 81; cell++)
+        {
+            int word = cell / 27 * STRIDE;
+            int bit = 1 << (cell % 27);
+            for (int d = 0; d < 9; d++)
+            {
+                if ((planes[word + d] & bit) != 0)
+                {
+                    board[cell / 9][cell % 9] = d + 1;
+                }
+            }
+        }
+        return board;
+    }
+
+    private static int[] peers()
+    {
+        int[] peers = new int[3 * 81];
+        for (int cell = 0; cell < 81; cell++)
+        {
+            for (int other = 0; other < 81; other++)
+            {
+                int row = cell / 9;
+                int col = cell % 9;
+                int otherRow = other / 9;
+                int otherCol = other % 9;
+                if (other != cell && (row == otherRow || col == otherCol
+                        || row / 3 == otherRow / 3 && col / 3 == otherCol / 3))
+                {
+                    peers[3 * cell + other / 27] |= 1 << (other % 27);
+                }
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * @return the vector kernel if the incubator module is there and not
+     * turned off, else the scalar one
+     */
+    private static Kernel loadKernel()
+    {
+        if (!"false".equals(System.getProperty("sudoku.bitboard.vector")))
+        {
+            try
+            {
+                Kernel kernel = (Kernel) Class.forName("sudoku.VectorBitboardKernel").getDeclaredConstructor()
+                        .newInstance();
+                // links the vector classes now rather than in the first solve
+                int[] planes = new int[PLANES];
+                load(new int[9][9], planes);
+                kernel.hiddenSingles(planes, new int[PLANES]);
+                return kernel;
+            }
+            catch (ReflectiveOperationException e)
+            {
+                // built without the vector kernel, or no species fits
+            }
+            catch (LinkageError e)
+            {
+                // jdk.incubator.vector is not in the module graph
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    /**
+     * The state of one solve: the planes of every level of the search
+     * tree, allocated as the search first gets there.
+     */
+    private static final class Search
+    {
+        private final int[][] levels = new int[82][];
+        private final int[] scratch = new int[PLANES];
+        private final int limit;
+        private int solutions;
+        private int[] firstSolution;
+
+        Search(int limit)
+        {
+            this.limit = limit;
+        }
+
+        int[] level(int depth)
+        {
+            if (levels[depth] == null)
+            {
+                levels[depth] = new int[PLANES];
+            }
+            return levels[depth];
+        }
+
+        /**
+         * Searches the planes of a level, counting solutions until limit.
+         */
+        void search(int depth)
+        {
+            int[] planes = levels[depth];
+            if (!propagate(planes, scratch))
+            {
+                return;
+            }
+            int cell = chooseCell(planes);
+            if (cell < 0)
+            {
+                if (solutions++ == 0)
+                {
+                    firstSolution = planes.clone();
+                }
+                return;
+            }
+            int word = cell / 27 * STRIDE;
+            int bit = 1 << (cell % 27);
+            int[] child = level(depth + 1);
+            for (int d = 0; d < 9 && solutions < limit; d++)
+            {
+                if ((planes[word + d] & bit) != 0)
+                {
+                    System.arraycopy(planes, 0, child, 0, PLANES);
+                    place(child, cell, d);
+                    search(depth + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the steps of the vector kernel on one digit at a time.
+     */
+    static final class ScalarKernel implements Kernel
+    {
+        public int hiddenSingles(int[] planes, int[] scratch)
+        {
+            int hidden0 = 0;
+            int hidden1 = 0;
+            int hidden2 = 0;
+            for (int d = 0; d < 9; d++)
+            {
+                int p0 = planes[d];
+                int p1 = planes[STRIDE + d];
+                int p2 = planes[2 * STRIDE + d];
+                int h0 = inUnits(p0);
+                int h1 = inUnits(p1);
+                int h2 = inUnits(p2);
+                int onlyOnce = inColumns(p0, p1, p2);
+                if ((h0 | h1 | h2 | onlyOnce) < 0)
+                {
+                    return -1;
+                }
+                h0 |= p0 & onlyOnce;
+                h1 |= p1 & onlyOnce;
+                h2 |= p2 & onlyOnce;
+                scratch[d] = h0;
+                scratch[STRIDE + d] = h1;
+                scratch[2 * STRIDE + d] = h2;
+                hidden0 |= h0;
+                hidden1 |= h1;
+                hidden2 |= h2;
+            }
+            int changed = 0;
+            for (int d = 0; d < 9; d++)
+            {
+                int p0 = planes[d] & (~hidden0 | scratch[d]);
+                int p1 = planes[STRIDE + d] & (~hidden1 | scratch[STRIDE + d]);
+                int p2 = planes[2 * STRIDE + d] & (~hidden2 | scratch[2 * STRIDE + d]);
+                changed |= planes[d] ^ p0 | planes[STRIDE + d] ^ p1 | planes[2 * STRIDE + d] ^ p2;
+                planes[d] = p0;
+                planes[STRIDE + d] = p1;
+                planes[2 * STRIDE + d] = p2;
+            }
+            return changed != 0 ? 1 : 0;
+        }
+
+        /**
+         * @param x a band of a plane
+         * @return the cells alone in their row or box, or -1 if a row or
+         * box has none
+         */
+        private static int inUnits(int x)
+        {
+            int hidden = 0;
+            for (int k = 0; k < 3; k++)
+            {
+                int row = x & ROW << 9 * k;
+                int box = x & BOX << 3 * k;
+                if (row == 0 || box == 0)
+                {
+                    return -1;
+                }
+                hidden |= row & -isZero(row & (row - 1)) | box & -isZero(box & (box - 1));
+            }
+            return hidden;
+        }
+
+        /**
+         * @param p0 the first band of a plane
+         * @return the cells of all three bands in columns that hold only
+         * one of them, or -1 if a column has none
+         */
+        private static int inColumns(int p0, int p1, int p2)
+        {
+            int any = p0 | p1 | p2;
+            int once = (any | any >>> 9 | any >>> 18) & ROW;
+            if (once != ROW)
+            {
+                return -1;
+            }
+            int twice = p0 & p1 | p2 & (p0 | p1);
+            twice |= twice >>> 9 | twice >>> 18 | any & any >>> 9 | any >>> 18 & (any | any >>> 9);
+            int onlyOnce = once & ~twice;
+            return onlyOnce | onlyOnce << 9 | onlyOnce << 18;
+        }
+
+        /**
+         * @param x a band word
+         * @return 1 if x is 0, else 0
+         */
+        private static int isZero(int x)
+        {
+            return (x + BAND) >>> 27 ^ 1;
+        }
+
+        public String toString()
+        {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package sudoku;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A symmetry of Sudoku boards that maps a board to its canonical form.
+ *
+ * The symmetries taken into account are relabelling the digits,
+ * transposing, permuting the bands and the stacks, and reversing the
+ * order of the rows in every band or of the columns in every stack; the
+ * last two together with transposing give all rotations and reflections.
+ * For a 9x9 board that is 288 arrangements of the cells, each with its
+ * own relabelling.  Swapping single rows inside a band is left out: it
+ * would multiply the arrangements by 216 for a kind of copy that is rarely
+ * seen in practice.
+ *
+ * The canonical form is the arrangement whose cells, read row by row
+ * with the digits numbered in order of first appearance, come first in
+ * lexicographic order.  Every board that is one of these symmetries of
+ * another has the same canonical form.
+ */
+public final class BoardTransform
+{
+    /**
+     * For each block width, the row maps that make up the row
+     * (or column) part of the symmetries, built on first use.
+     */
+    private static final AtomicReferenceArray<int[][]> LINE_MAPS = new AtomicReferenceArray<int[][]>(9);
+
+    private final int n;
+    private final boolean transposed;
+    /**
+     * Row i of the canonical board comes from row rowMap[i] of the
+     * (transposed) board, and column j from column colMap[j].
+     */
+    private final int[] rowMap;
+    private final int[] colMap;
+    /**
+     * relabel[d] is the canonical digit for digit d, and
+     * relabel[0] = 0 for empty cells.
+     */
+    private final int[] relabel;
+    private final int[] inverseLabel;
+    /**
+     * The canonical board, row after row.
+     */
+    private final int[] canonical;
+
+    private BoardTransform(int n, boolean transposed, int[] rowMap, int[] colMap, int[] relabel, int[] canonical)
+    {
+        this.n = n;
+        this.transposed = transposed;
+        this.rowMap = rowMap;
+        this.colMap = colMap;
+        this.relabel = relabel;
+        this.canonical = canonical;
+        inverseLabel = new int[n + 1];
+        for (int d = 0; d <= n; d++)
+        {
+            inverseLabel[relabel[d]] = d;
+        }
+    }
+
+    /**
+     * Finds the symmetry that maps a board to its canonical form.
+     * @param board a k * k by k * k board with 0 for empty cells
+     * @return the transform from board to its canonical form
+     * @throws IllegalArgumentException if the board is not square with a side
+     * of k * k, or holds a value outside 0 to k * k
+     */
+    public static BoardTransform canonical(int[][] board)
+    {
+        int n = board.length;
+        int[][] lineMaps = lineMaps(n);
+        int[] cells = new int[n * n];
+        int[] cellsTransposed = new int[n * n];
+        for (int i = 0; i < n; i++)
+        {
+            if (board[i].length != n)
+            {
+                throw new IllegalArgumentException("Board is not square");
+            }
+            for (int j = 0; j < n; j++)
+            {
+                int value = board[i][j];
+                if (value < 0 || value > n)
+                {
+                    throw new IllegalArgumentException("Invalid value " + value);
+                }
+                cells[i * n + j] = value;
+                cellsTransposed[j * n + i] = value;
+            }
+        }
+
+        int[] best = null;
+        int[] candidate = new int[n * n];
+        int[] labels = new int[n + 1];
+        boolean bestTransposed = false;
+        int bestRows = 0;
+        int bestCols = 0;
+        for (int t = 0; t < 2; t++)
+        {
+            int[] source = t == 0 ? cells : cellsTransposed;
+            for (int r = 0; r < lineMaps.length; r++)
+            {
+                int[] rows = lineMaps[r];
+                for (int c = 0; c < lineMaps.length; c++)
+                {
+                    if (fill(source, rows, lineMaps[c], labels, candidate, best))
+                    {
+                        int[] swap = best == null ? new int[n * n] : best;
+                        best = candidate;
+                        candidate = swap;
+                        bestTransposed = t == 1;
+                        bestRows = r;
+                        bestCols = c;
+                    }
+                }
+            }
+        }
+
+        // number the digits the same way again, then give the ones that
+        // do not appear the labels left over, in increasing order
+        int[] source = bestTransposed ? cellsTransposed : cells;
+        java.util.Arrays.fill(labels, 0);
+        int next = 1;
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                int value = source[lineMaps[bestRows][i] * n + lineMaps[bestCols][j]];
+                if (value != 0 && labels[value] == 0)
+                {
+                    labels[value] = next++;
+                }
+            }
+        }
+        for (int d = 1; d <= n; d++)
+        {
+            if (labels[d] == 0)
+            {
+                labels[d] = next++;
+            }
+        }
+        return new BoardTransform(n, bestTransposed, lineMaps[bestRows], lineMaps[bestCols], labels, best);
+    }
+
+    /**
+     * Writes the board that one arrangement gives into candidate, numbering
+     * the digits in order of first appearance, and gives up as soon as it
+     * is sure to come after best.
+     * @return true if candidate now holds a board that comes before best
+     */
+    private static boolean fill(int[] source, int[] rows, int[] cols, int[] labels, int[] candidate, int[] best)
+    {
+        int n = rows.length;
+        java.util.Arrays.fill(labels, 0);
+        int next = 1;
+        boolean smaller = best == null;
+        int k = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int rowStart = rows[i] * n;
+            for (int j = 0; j < n; j++, k++)
+            {
+                int value = source[rowStart + cols[j]];
+                if (value != 0)
+                {
+                    if (labels[value] == 0)
+                    {
+                        labels[value] = next++;
+                    }
+                    value = labels[value];
+                }
+                if (!smaller)
+                {
+                    if (value > best[k])
+                    {
+                        return false;
+                    }
+                    smaller = value < best[k];
+                }
+                candidate[k] = value;
+            }
+        }
+        return smaller;
+    }
+
+    /**
+     * @param n number of rows of the board
+     * @return every row order made of a permutation of the bands and
+     * either keeping or reversing the rows inside each band
+     */
+    private static int[][] lineMaps(int n)
+    {
+        int blockWidth = (int) Math.round(Math.sqrt(n));
+        if (blockWidth * blockWidth != n || blockWidth < 1 || blockWidth >= LINE_MAPS.length())
+        {
+            throw new IllegalArgumentException("Unsupported board size " + n);
+        }
+        int[][] maps = LINE_MAPS.get(blockWidth);
+        if (maps == null)
+        {
+            int[][] bandOrders = permutations(blockWidth);
+            int reversals = blockWidth > 1 ? 2 : 1;
+            maps = new int[bandOrders.length * reversals][n];
+            int m = 0;
+            for (int[] bands : bandOrders)
+            {
+                for (int reverse = 0; reverse < reversals; reverse++)
+                {
+                    for (int i = 0; i < n; i++)
+                    {
+                        int row = i % blockWidth;
+                        maps[m][i] = blockWidth * bands[i / blockWidth] + (reverse == 1 ? blockWidth - 1 - row : row);
+                    }
+                    m++;
+                }
+            }
+            // two threads may both build them; either copy will do
+            LINE_MAPS.compareAndSet(blockWidth, null, maps);
+            maps = LINE_MAPS.get(blockWidth);
+        }
+        return maps;
+    }
+
+    /**
+     * @return every permutation of 0 to count - 1
+     */
+    private static int[][] permutations(int count)
+    {
+        int total = 1;
+        for (int i = 2; i <= count; i++)
+        {
+            total *= i;
+        }
+        int[][] result = new int[total][];
+        int[] perm = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            perm[i] = i;
+        }
+        for (int p = 0; p < total; p++)
+        {
+            result[p] = perm.clone();
+            // next permutation in lexicographic order
+            int i = count - 2;
+            while (i >= 0 && perm[i] > perm[i + 1])
+            {
+                i--;
+            }
+            if (i < 0)
+            {
+                break;
+            }
+            int j = count - 1;
+            while (perm[j] < perm[i])
+            {
+                j--;
+            }
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+            for (int a = i + 1, b = count - 1; a < b; a++, b--)
+            {
+                t = perm[a];
+                perm[a] = perm[b];
+                perm[b] = t;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the canonical form of the board this transform was made for
+     */
+    public int[][] getCanonicalBoard()
+    {
+        int[][] board = new int[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            System.arraycopy(canonical, i * n, board[i], 0, n);
+        }
+        return board;
+    }
+
+    /**
+     * @return the canonical form as a string, one char per cell,
+     * for use as a hash key
+     */
+    public String getKey()
+    {
+        char[] chars = new char[canonical.length];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char) ('0' + canonical[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param board a board like the one this transform was made for,
+     * such as its solution
+     * @return the board moved into the canonical frame
+     */
+    public int[][] apply(int[][] board)
+    {
+        int[][] result = new int[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                int r = rowMap[i];
+                int c = colMap[j];
+                result[i][j] = relabel[transposed ? board[c][r] : board[r][c]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param canonicalBoard a board in the canonical frame, such as the
+     * solution of the canonical form
+     * @return the board moved back into the frame of the board this
+     * transform was made for
+     */
+    public int[][] invert(int[][] canonicalBoard)
+    {
+        int[][] result = new int[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                int r = rowMap[i];
+                int c = colMap[j];
+                int value = inverseLabel[canonicalBoard[i][j]];
+                if (transposed)
+                {
+                    result[c][r] = value;
+                }
+                else
+                {
+                    result[r][c] = value;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,21 @@
+package sudoku;
+
+/**
+ * Lets another thread stop a solve started with
+ * SudokuSolver.solve(int[][], CancellationToken).
+ * A token stays cancelled once cancel has been called.
+ */
+public final class CancellationToken
+{
+    private volatile boolean cancelled;
+
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+}
@@ -0,0 +1,320 @@
+package sudoku;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Solves a Sudoku board as an exact cover problem with Knuth's
+ * Algorithm X over Dancing Links.
+ *
+ * For an n x n board the matrix has n^3 rows, one for each digit d in
+ * each cell (r, c), and 4n^2 columns.  Row (r, c, d) covers the columns
+ * "cell (r, c) is filled", "row r holds d", "column c holds d" and
+ * "the block of (r, c) holds d".
+ */
+public class DancingLinksSolver implements SudokuSolver.Engine
+{
+    /**
+     * The empty matrix for each board size, built once and
+     * copied for every solve.
+     */
+    private static final Map<Integer, Links> TEMPLATES = new HashMap<Integer, Links>();
+
+    /**
+     * @throws SudokuSolver.InvalidSudokuBoardException also if a given is
+     * not from 1 to n
+     */
+    public int[][] solve(SudokuSolver solver, int[][] board) throws SudokuSolver.InvalidSudokuBoardException
+    {
+        int n = board.length;
+        Links links = new Links(template(n));
+        int[] rows = new int[n * n];
+        int given = 0;
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                if (board[i][j] < 0 || board[i][j] > n)
+                {
+                    throw new SudokuSolver.InvalidSudokuBoardException("Invalid value " + board[i][j] + " at " + i + ","
+                            + j);
+                }
+                if (board[i][j] != 0)
+                {
+                    int row = (i * n + j) * n + board[i][j] - 1;
+                    if (!links.select(row))
+                    {
+                        throw new SudokuSolver.InvalidSudokuBoardException("No solution");
+                    }
+                    rows[given++] = row;
+                }
+            }
+        }
+        links.search(rows, given, solver.isCheckUniqueness() ? 2 : 1);
+        if (links.solutions == 0)
+        {
+            throw new SudokuSolver.InvalidSudokuBoardException("No solution");
+        }
+        if (links.solutions > 1)
+        {
+            throw new SudokuSolver.InvalidSudokuBoardException("Multiple solutions");
+        }
+        int[][] solution = new int[n][n];
+        for (int row : links.firstSolution)
+        {
+            int cell = row / n;
+            solution[cell / n][cell % n] = row % n + 1;
+        }
+        return solution;
+    }
+
+    /**
+     * @param n number of rows and columns of the board
+     * @return the shared empty matrix for boards of that size
+     */
+    private static Links template(int n)
+    {
+        synchronized (TEMPLATES)
+        {
+            Links template = TEMPLATES.get(n);
+            if (template == null)
+            {
+                template = new Links(n);
+                TEMPLATES.put(n, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * The toroidal doubly linked matrix, kept in parallel int arrays.
+     * Node 0 is the root, nodes 1 to columnCount are the column headers
+     * and each matrix row owns 4 consecutive nodes after those.
+     */
+    private static final class Links
+    {
+        private final int columnCount;
+        private final int[] left;
+        private final int[] right;
+        private final int[] up;
+        private final int[] down;
+        /**
+         * Column header of each node.
+         */
+        private final int[] column;
+        /**
+         * Number of nodes left in each column, indexed by header.
+         */
+        private final int[] size;
+        /**
+         * Whether each column has been covered by a selected row.
+         */
+        private final boolean[] covered;
+        /**
+         * Number of solutions found by search, and the rows of the first.
+         */
+        private int solutions;
+        private int[] firstSolution;
+
+        /**
+         * Builds the empty matrix for an n x n board.
+         * @param n
+         */
+        Links(int n)
+        {
+            int blockWidth = (int) Math.round(Math.sqrt(n));
+            if (blockWidth * blockWidth != n)
+            {
+                throw new IllegalArgumentException("Board size " + n + " is not a square");
+            }
+            columnCount = 4 * n * n;
+            int nodes = 1 + columnCount + 4 * n * n * n;
+            left = new int[nodes];
+            right = new int[nodes];
+            up = new int[nodes];
+            down = new int[nodes];
+            column = new int[nodes];
+            size = new int[columnCount + 1];
+            covered = new boolean[columnCount + 1];
+
+            for (int c = 0; c <= columnCount; c++)
+            {
+                left[c] = c == 0 ? columnCount : c - 1;
+                right[c] = c == columnCount ? 0 : c + 1;
+                up[c] = c;
+                down[c] = c;
+                column[c] = c;
+            }
+            int node = columnCount + 1;
+            for (int i = 0; i < n; i++)
+            {
+                for (int j = 0; j < n; j++)
+                {
+                    int block = blockWidth * (i / blockWidth) + j / blockWidth;
+                    for (int d = 0; d < n; d++)
+                    {
+                        int[] columns = {
+                                1 + i * n + j,
+                                1 + n * n + i * n + d,
+                                1 + 2 * n * n + j * n + d,
+                                1 + 3 * n * n + block * n + d };
+                        for (int k = 0; k < 4; k++)
+                        {
+                            int c = columns[k];
+                            left[node + k] = node + (k + 3) % 4;
+                            right[node + k] = node + (k + 1) % 4;
+                            // append at the bottom of the column
+                            up[node + k] = up[c];
+                            down[node + k] = c;
+                            down[up[c]] = node + k;
+                            up[c] = node + k;
+                            column[node + k] = c;
+                            size[c]++;
+                        }
+                        node += 4;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Copies a matrix so that it can be solved without
+         * touching the original.
+         * @param other
+         */
+        Links(Links other)
+        {
+            columnCount = other.columnCount;
+            left = other.left.clone();
+            right = other.right.clone();
+            up = other.up.clone();
+            down = other.down.clone();
+            column = other.column;
+            size = other.size.clone();
+            covered = other.covered.clone();
+        }
+
+        /**
+         * @return the matrix row that a node belongs to
+         */
+        private int rowOf(int node)
+        {
+            return (node - columnCount - 1) / 4;
+        }
+
+        /**
+         * @return the first node of a matrix row
+         */
+        private int firstNode(int row)
+        {
+            return columnCount + 1 + 4 * row;
+        }
+
+        private void cover(int c)
+        {
+            covered[c] = true;
+            right[left[c]] = right[c];
+            left[right[c]] = left[c];
+            for (int i = down[c]; i != c; i = down[i])
+            {
+                for (int j = right[i]; j != i; j = right[j])
+                {
+                    down[up[j]] = down[j];
+                    up[down[j]] = up[j];
+                    size[column[j]]--;
+                }
+            }
+        }
+
+        private void uncover(int c)
+        {
+            for (int i = up[c]; i != c; i = up[i])
+            {
+                for (int j = left[i]; j != i; j = left[j])
+                {
+                    size[column[j]]++;
+                    down[up[j]] = j;
+                    up[down[j]] = j;
+                }
+            }
+            right[left[c]] = c;
+            left[right[c]] = c;
+            covered[c] = false;
+        }
+
+        /**
+         * Puts a matrix row in the solution for good, as is done for
+         * the givens of the board.
+         * @param row
+         * @return false if the row clashes with a row selected before
+         */
+        boolean select(int row)
+        {
+            int first = firstNode(row);
+            for (int k = 0; k < 4; k++)
+            {
+                if (covered[column[first + k]])
+                {
+                    return false;
+                }
+            }
+            for (int k = 0; k < 4; k++)
+            {
+                cover(column[first + k]);
+            }
+            return true;
+        }
+
+        /**
+         * Algorithm X: covers the column with the fewest rows left and
+         * tries each of its rows in turn.  Counts the ways of covering the
+         * whole matrix in solutions and keeps the rows of the first one in
+         * firstSolution.
+         * @param rows the rows of the solution, filled in from index depth on
+         * @param depth number of rows already in the solution
+         * @param limit the search stops once this many solutions are found
+         */
+        void search(int[] rows, int depth, int limit)
+        {
+            if (right[0] == 0)
+            {
+                if (solutions++ == 0)
+                {
+                    firstSolution = rows.clone();
+                }
+                return;
+            }
+            int best = right[0];
+            for (int c = right[best]; c != 0; c = right[c])
+            {
+                if (size[c] < size[best])
+                {
+                    best = c;
+                }
+            }
+            if (size[best] == 0)
+            {
+                return;
+            }
+            cover(best);
+            for (int r = down[best]; r != best; r = down[r])
+            {
+                rows[depth] = rowOf(r);
+                for (int j = right[r]; j != r; j = right[j])
+                {
+                    cover(column[j]);
+                }
+                search(rows, depth + 1, limit);
+                for (int j = left[r]; j != r; j = left[j])
+                {
+                    uncover(column[j]);
+                }
+                if (solutions >= limit)
+                {
+                    break;
+                }
+            }
+            uncover(best);
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads Sudoku boards straight out of a memory-mapped corpus file.
+ *
+ * Boards are parsed from the mapped bytes into int buffers without making
+ * a String per line, and the file can be split into ranges that are read
+ * on different threads.  Files larger than 2 GB are mapped in segments.
+ * Two formats are understood:
+ *
+ * DOTS: one board per line in the format of SudokuUtil.parseBoardDots.
+ * COMMA: bdSize lines of comma separated numbers per board, as in the
+ * .sud files, with optional blank lines between boards.  The file is
+ * split at the blank lines, so a large COMMA corpus should have them.
+ */
+public final class MappedBoardReader implements Closeable
+{
+    public enum Format
+    {
+        DOTS,
+        COMMA
+    }
+
+    /**
+     * Bytes covered by each mapped segment.  Each mapping reaches OVERLAP
+     * bytes further, so that a board starting in a segment can be parsed
+     * from that segment alone.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int OVERLAP = 1 << 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final Format format;
+    private final int bdSize;
+
+    private MappedBoardReader(FileChannel channel, Format format, int bdSize) throws IOException
+    {
+        this.channel = channel;
+        this.format = format;
+        this.bdSize = bdSize;
+        size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++)
+        {
+            long start = i * SEGMENT_SIZE;
+            long length = Math.min(size - start, SEGMENT_SIZE + OVERLAP);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    /**
+     * @param path the corpus file
+     * @param format how the boards are written
+     * @param bdSize The number of rows and columns in each Sudoku board.
+     * @return a reader over the whole file; close it when done
+     * @throws IOException
+     */
+    public static MappedBoardReader open(Path path, Format format, int bdSize) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            return new MappedBoardReader(channel, format, bdSize);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * @return a cursor over every board of the file
+     */
+    public Cursor cursor()
+    {
+        return new Cursor(0, size);
+    }
+
+    /**
+     * @return a spliterator over every board of the file as an int[][],
+     * which splits on board boundaries for parallel streams
+     */
+    public Spliterator<int[][]> spliterator()
+    {
+        return new BoardSpliterator(0, size);
+    }
+
+    /**
+     * @param parallel whether the stream may read ranges of the file on several threads
+     * @return the boards of the file
+     */
+    public Stream<int[][]> boards(boolean parallel)
+    {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    private byte byteAt(long position)
+    {
+        int segment = (int) (position / SEGMENT_SIZE);
+        return segments[segment].get((int) (position - segment * SEGMENT_SIZE));
+    }
+
+    private static boolean isLineEnd(byte b)
+    {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * @return the position just after the end of the line holding position,
+     * or end if there is no further line break before it
+     */
+    private long nextLine(long position, long end)
+    {
+        while (position < end && byteAt(position) != '\n')
+        {
+            position++;
+        }
+        return Math.min(position + 1, end);
+    }
+
+    /**
+     * Finds a board boundary near a position, for splitting a range.
+     * In COMMA format the boundary is the first non blank line after the
+     * closest blank line before the position.  Only a range without blank
+     * lines in the last OVERLAP bytes before the position is aligned by
+     * counting lines from its start.
+     * @param boundary a position where a board starts
+     * @param position where to start looking
+     * @param end end of the range
+     */
+    private long alignToBoard(long boundary, long position, long end)
+    {
+        if (format == Format.DOTS)
+        {
+            // every line is a board
+            return position == boundary ? position : nextLine(position - 1, end);
+        }
+        long line = lineStart(boundary, position);
+        long limit = Math.max(boundary, position - OVERLAP);
+        while (line > limit)
+        {
+            long previous = lineStart(boundary, line - 1);
+            if (isBlank(previous, line))
+            {
+                // the next board starts at the first non blank line
+                while (line < end && isBlank(line, nextLine(line, end)))
+                {
+                    line = nextLine(line, end);
+                }
+                return line;
+            }
+            line = previous;
+        }
+        return countToBoard(boundary, position, end);
+    }
+
+    /**
+     * @return the start of the line holding position, but not before from
+     */
+    private long lineStart(long from, long position)
+    {
+        while (position > from && byteAt(position - 1) != '\n')
+        {
+            position--;
+        }
+        return position;
+    }
+
+    /**
+     * Finds the first board boundary at or after a position by counting
+     * the non blank lines from a known boundary; a board starts after
+     * every bdSize of them.
+     */
+    private long countToBoard(long boundary, long position, long end)
+    {
+        long p = boundary;
+        int lines = 0;
+        while (p < end)
+        {
+            if (lines % bdSize == 0 && p >= position)
+            {
+                return p;
+            }
+            long next = nextLine(p, end);
+            if (!isBlank(p, next))
+            {
+                lines++;
+            }
+            p = next;
+        }
+        return end;
+    }
+
+    private boolean isBlank(long from, long to)
+    {
+        for (long p = from; p < to; p++)
+        {
+            byte b = byteAt(p);
+            if (b != ' ' && b != '\t' && !isLineEnd(b))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the boards of a byte range one after the other into a
+     * caller-supplied buffer.  Not thread safe; give each thread its own
+     * cursor over its own range.
+     */
+    public final class Cursor
+    {
+        private int segment;
+        private MappedByteBuffer buffer;
+        /**
+         * File position of the start of buffer.
+         */
+        private long base;
+        /**
+         * Current position, relative to buffer.
+         */
+        private int position;
+        /**
+         * End of the range, relative to buffer.
+         */
+        private long end;
+
+        /**
+         * @param from a position where a board starts
+         * @param to end of the range
+         */
+        private Cursor(long from, long to)
+        {
+            segment = (int) (from / SEGMENT_SIZE);
+            base = segment * SEGMENT_SIZE;
+            buffer = segment < segments.length ? segments[segment] : null;
+            position = (int) (from - base);
+            end = to - base;
+        }
+
+        /**
+         * Moves on to the next segment once the position has left the
+         * part of the current one that boards may start in.
+         */
+        private void nextSegmentIfNeeded()
+        {
+            if (position >= SEGMENT_SIZE && segment + 1 < segments.length)
+            {
+                segment++;
+                buffer = segments[segment];
+                base += SEGMENT_SIZE;
+                position -= (int) SEGMENT_SIZE;
+                end -= SEGMENT_SIZE;
+            }
+        }
+
+        /**
+         * Parses the next board into cells, row after row, with 0 for
+         * empty cells.
+         * @param cells a buffer of at least bdSize * bdSize ints
+         * @return false if there are no more boards
+         * @throws IOException if the bytes are not a board of the right
+         * size; the cursor then moves past the line where that showed, so
+         * that reading may go on with the next board in DOTS format
+         */
+        public boolean next(int[] cells) throws IOException
+        {
+            skipBlank();
+            nextSegmentIfNeeded();
+            skipBlank();
+            if (position >= end)
+            {
+                return false;
+            }
+            try
+            {
+                if (format == Format.DOTS)
+                {
+                    readDots(cells);
+                }
+                else
+                {
+                    readComma(cells);
+                }
+            }
+            catch (IOException e)
+            {
+                skipLine();
+                throw e;
+            }
+            return true;
+        }
+
+        private void skipLine()
+        {
+            while (position < buffer.limit() && buffer.get(position) != '\n')
+            {
+                position++;
+            }
+            position++;
+        }
+
+        private void skipBlank()
+        {
+            while (position < end && position < buffer.limit())
+            {
+                byte b = buffer.get(position);
+                if (b != ' ' && b != '\t' && !isLineEnd(b))
+                {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * Skips spaces and tabs within the current line.
+         */
+        private void skipSpaces()
+        {
+            while (position < buffer.limit() && (buffer.get(position) == ' ' || buffer.get(position) == '\t'))
+            {
+                position++;
+            }
+        }
+
+        private void readDots(int[] cells) throws IOException
+        {
+            int count = bdSize * bdSize;
+            for (int i = 0; i < count; i++)
+            {
+                byte b = position < buffer.limit() ? buffer.get(position) : (byte) '\n';
+                if (b == '.' || b == '0')
+                {
+                    cells[i] = 0;
+                }
+                else if (b >= '1' && b <= '9' && b - '0' <= bdSize)
+                {
+                    cells[i] = b - '0';
+                }
+                else
+                {
+                    throw invalid();
+                }
+                position++;
+            }
+            // the rest of the line may only be white space
+            while (position < buffer.limit() && !isLineEnd(buffer.get(position)))
+            {
+                byte b = buffer.get(position);
+                if (b != ' ' && b != '\t')
+                {
+                    throw invalid();
+                }
+                position++;
+            }
+        }
+
+        private void readComma(int[] cells) throws IOException
+        {
+            for (int row = 0; row < bdSize; row++)
+            {
+                skipBlank();
+                for (int col = 0; col < bdSize; col++)
+                {
+                    skipSpaces();
+                    int value = 0;
+                    int digits = 0;
+                    byte b;
+                    while (position < buffer.limit() && (b = buffer.get(position)) >= '0' && b <= '9')
+                    {
+                        value = 10 * value + b - '0';
+                        digits++;
+                        position++;
+                    }
+                    if (digits == 0 || value > bdSize)
+                    {
+                        throw invalid();
+                    }
+                    cells[row * bdSize + col] = value;
+                    skipSpaces();
+                    if (col < bdSize - 1)
+                    {
+                        if (position >= buffer.limit() || buffer.get(position) != ',')
+                        {
+                            throw invalid();
+                        }
+                        position++;
+                    }
+                }
+                if (position < buffer.limit() && !isLineEnd(buffer.get(position)))
+                {
+                    throw invalid();
+                }
+            }
+        }
+
+        private IOException invalid()
+        {
+            return new IOException("Invalid board near byte " + (base + position));
+        }
+    }
+
+    /**
+     * Spliterator over a byte range whose start is a board boundary.
+     */
+    private final class BoardSpliterator implements Spliterator<int[][]>
+    {
+        /**
+         * Splitting stops once a range is smaller than this many bytes.
+         */
+        private static final long MIN_SPLIT = 1 << 16;
+        private long from;
+        private final long to;
+        private Cursor cursor;
+
+        BoardSpliterator(long from, long to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        public boolean tryAdvance(Consumer<? super int[][]> action)
+        {
+            if (cursor == null)
+            {
+                cursor = new Cursor(from, to);
+            }
+            int[] cells = new int[bdSize * bdSize];
+            try
+            {
+                if (!cursor.next(cells))
+                {
+                    return false;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            int[][] board = new int[bdSize][];
+            for (int i = 0; i < bdSize; i++)
+            {
+                board[i] = new int[bdSize];
+                System.arraycopy(cells, i * bdSize, board[i], 0, bdSize);
+            }
+            action.accept(board);
+            return true;
+        }
+
+        public Spliterator<int[][]> trySplit()
+        {
+            if (cursor != null || to - from < MIN_SPLIT)
+            {
+                return null;
+            }
+            long middle = alignToBoard(from, from + (to - from) / 2, to);
+            if (middle <= from || middle >= to)
+            {
+                return null;
+            }
+            BoardSpliterator prefix = new BoardSpliterator(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        public long estimateSize()
+        {
+            long boardBytes = format == Format.DOTS ? bdSize * bdSize + 1 : 2L * bdSize * bdSize;
+            return Math.max(1, (to - from) / boardBytes);
+        }
+
+        public int characteristics()
+        {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package sudoku;
+
+/**
+ * A bounded set of nogoods learned by the backjumping search.
+ *
+ * A nogood is a list of literals "the domain of cell c is within D" that
+ * cannot all hold in a solution.  Once the store is full, a new nogood
+ * replaces the one that has gone longest without being added or used to
+ * prune, so memory stays at capacity nogoods of at most maxLength literals.
+ */
+final class NogoodStore
+{
+    private final int[][] cells;
+    private final long[][] domains;
+    /**
+     * Value of clock when each nogood was last added or used.
+     */
+    private final long[] lastUsed;
+    private final int maxLength;
+    private int size;
+    private long clock;
+    private long evictions;
+
+    /**
+     * @param capacity the most nogoods kept
+     * @param maxLength longer nogoods are not kept, since they rarely prune
+     */
+    NogoodStore(int capacity, int maxLength)
+    {
+        cells = new int[capacity][];
+        domains = new long[capacity][];
+        lastUsed = new long[capacity];
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Stores a nogood, evicting the least recently used one if the store is full.
+     * @param nogoodCells the cell of each literal
+     * @param nogoodDomains the domain of each literal
+     * @param length number of literals
+     * @return false if the nogood was too long to keep
+     */
+    boolean add(int[] nogoodCells, long[] nogoodDomains, int length)
+    {
+        if (length > maxLength || cells.length == 0)
+        {
+            return false;
+        }
+        int slot = size;
+        if (size == cells.length)
+        {
+            slot = 0;
+            for (int i = 1; i < size; i++)
+            {
+                if (lastUsed[i] < lastUsed[slot])
+                {
+                    slot = i;
+                }
+            }
+            evictions++;
+        }
+        else
+        {
+            size++;
+        }
+        cells[slot] = java.util.Arrays.copyOf(nogoodCells, length);
+        domains[slot] = java.util.Arrays.copyOf(nogoodDomains, length);
+        lastUsed[slot] = ++clock;
+        return true;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int[] cells(int i)
+    {
+        return cells[i];
+    }
+
+    long[] domains(int i)
+    {
+        return domains[i];
+    }
+
+    /**
+     * Marks a nogood as just used, which keeps it from being evicted soon.
+     */
+    void touch(int i)
+    {
+        lastUsed[i] = ++clock;
+    }
+
+    /**
+     * @return the number of nogoods dropped to make room for new ones
+     */
+    long getEvictions()
+    {
+        return evictions;
+    }
+}
@@ -0,0 +1,362 @@
+package sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A packed binary format for archives of Sudoku boards.
+ *
+ * A file starts with a header of the four bytes "SDKP", a format version
+ * byte and a byte with the number of rows of the boards.  Every board
+ * follows as a record of the same size: the cells row after row, each in
+ * as few bits as hold the numbers 0 to bdSize, most significant bit
+ * first, with 0 for an empty cell.  The last byte of a record is padded
+ * with zero bits.  A 9x9 board takes 4 bits per cell, 41 bytes, against
+ * 82 bytes for a dot string and about 170 for a .sud file; a 16x16 board
+ * takes 5 bits per cell, 160 bytes.
+ *
+ * Since records have a fixed size, board i of a file starts at byte
+ * HEADER_SIZE + i * recordSize(bdSize).
+ *
+ * Usage: PackedBoards pack|unpack input output [bdSize]
+ * converts between this format and one dot string per line.
+ */
+public final class PackedBoards
+{
+    public static final int HEADER_SIZE = 6;
+    private static final byte[] MAGIC = { 'S', 'D', 'K', 'P' };
+    private static final int VERSION = 1;
+
+    private PackedBoards()
+    {
+    }
+
+    public static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 3 || !argv[0].equals("pack") && !argv[0].equals("unpack"))
+        {
+            System.err.println("Usage: PackedBoards pack|unpack input output [bdSize]");
+            System.exit(1);
+        }
+        int count = 0;
+        if (argv[0].equals("pack"))
+        {
+            int bdSize = argv.length > 3 ? Integer.parseInt(argv[3]) : 9;
+            BufferedReader in = new BufferedReader(new FileReader(argv[1]));
+            Writer out = new Writer(new FileOutputStream(argv[2]), bdSize);
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    if (!line.trim().isEmpty())
+                    {
+                        out.write(SudokuUtil.parseBoardDots(line, bdSize));
+                        count++;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+                out.close();
+            }
+        }
+        else
+        {
+            Reader in = new Reader(new FileInputStream(argv[1]));
+            BufferedWriter out = new BufferedWriter(new FileWriter(argv[2]));
+            try
+            {
+                int[][] board;
+                while ((board = in.read()) != null)
+                {
+                    out.write(SudokuUtil.formatBoardDots(board));
+                    out.write('\n');
+                    count++;
+                }
+            }
+            finally
+            {
+                in.close();
+                out.close();
+            }
+        }
+        System.out.println(count + " boards");
+    }
+
+    /**
+     * @return true if the file starts with the magic bytes of this format
+     * @throws IOException
+     */
+    public static boolean isPacked(Path path) throws IOException
+    {
+        InputStream in = Files.newInputStream(path);
+        try
+        {
+            for (byte b : MAGIC)
+            {
+                if (in.read() != b)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the number of bits each cell of a board with bdSize rows takes
+     */
+    public static int bitsPerCell(int bdSize)
+    {
+        return 32 - Integer.numberOfLeadingZeros(bdSize);
+    }
+
+    /**
+     * @return the number of bytes each board with bdSize rows takes
+     */
+    public static int recordSize(int bdSize)
+    {
+        return (bdSize * bdSize * bitsPerCell(bdSize) + 7) / 8;
+    }
+
+    /**
+     * Writes boards of one size to a stream.
+     */
+    public static final class Writer implements Closeable, Flushable
+    {
+        private final OutputStream out;
+        private final int bdSize;
+        private final int bits;
+        private final byte[] record;
+
+        /**
+         * Writes the header.
+         * @param out the stream, which is buffered here
+         * @param bdSize number of rows of the boards, from 1 to 255
+         * @throws IOException
+         */
+        public Writer(OutputStream out, int bdSize) throws IOException
+        {
+            if (bdSize < 1 || bdSize > 255)
+            {
+                throw new IllegalArgumentException("Unsupported board size " + bdSize);
+            }
+            this.out = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16);
+            this.bdSize = bdSize;
+            bits = bitsPerCell(bdSize);
+            record = new byte[recordSize(bdSize)];
+            this.out.write(MAGIC);
+            this.out.write(VERSION);
+            this.out.write(bdSize);
+        }
+
+        /**
+         * @param board a bdSize by bdSize board with 0 for empty cells
+         * @throws IOException
+         * @throws IllegalArgumentException if the board is of another size
+         * or holds a number outside 0 to bdSize
+         */
+        public void write(int[][] board) throws IOException
+        {
+            if (board.length != bdSize)
+            {
+                throw new IllegalArgumentException("Board is not " + bdSize + "x" + bdSize);
+            }
+            long buffer = 0;
+            int buffered = 0;
+            int k = 0;
+            for (int[] row : board)
+            {
+                if (row.length != bdSize)
+                {
+                    throw new IllegalArgumentException("Board is not " + bdSize + "x" + bdSize);
+                }
+                for (int value : row)
+                {
+                    if (value < 0 || value > bdSize)
+                    {
+                        throw new IllegalArgumentException("Invalid value " + value);
+                    }
+                    buffer = buffer << bits | value;
+                    buffered += bits;
+                    if (buffered >= 8)
+                    {
+                        buffered -= 8;
+                        record[k++] = (byte) (buffer >>> buffered);
+                    }
+                }
+            }
+            if (buffered > 0)
+            {
+                record[k] = (byte) (buffer << (8 - buffered));
+            }
+            out.write(record);
+        }
+
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the boards of a stream written by a Writer, one after another.
+     */
+    public static final class Reader implements Closeable
+    {
+        private final InputStream in;
+        private final int bdSize;
+        private final int bits;
+        private final byte[] record;
+
+        /**
+         * Reads the header.
+         * @param in the stream, which is buffered here
+         * @throws IOException also if the stream does not start with the header
+         */
+        public Reader(InputStream in) throws IOException
+        {
+            this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16);
+            byte[] header = new byte[HEADER_SIZE];
+            if (readFully(header) < HEADER_SIZE)
+            {
+                throw new IOException("Not a packed board file");
+            }
+            for (int i = 0; i < MAGIC.length; i++)
+            {
+                if (header[i] != MAGIC[i])
+                {
+                    throw new IOException("Not a packed board file");
+                }
+            }
+            if (header[4] != VERSION)
+            {
+                throw new IOException("Unsupported packed board version " + header[4]);
+            }
+            bdSize = header[5] & 0xff;
+            if (bdSize == 0)
+            {
+                throw new IOException("Invalid board size 0");
+            }
+            bits = bitsPerCell(bdSize);
+            record = new byte[recordSize(bdSize)];
+        }
+
+        /**
+         * @return the number of rows of the boards in the stream
+         */
+        public int getBoardSize()
+        {
+            return bdSize;
+        }
+
+        /**
+         * @return the next board, or null at the end of the stream
+         * @throws IOException also if the stream ends inside a board or a
+         * cell holds a number greater than bdSize
+         */
+        public int[][] read() throws IOException
+        {
+            int[] cells = new int[bdSize * bdSize];
+            if (!read(cells))
+            {
+                return null;
+            }
+            int[][] board = new int[bdSize][bdSize];
+            for (int i = 0; i < bdSize; i++)
+            {
+                System.arraycopy(cells, bdSize * i, board[i], 0, bdSize);
+            }
+            return board;
+        }
+
+        /**
+         * Reads the next board into a buffer, to save making a board per read.
+         * @param cells receives the bdSize * bdSize cells, row after row
+         * @return false at the end of the stream
+         * @throws IOException also if the stream ends inside a board or a
+         * cell holds a number greater than bdSize
+         */
+        public boolean read(int[] cells) throws IOException
+        {
+            int length = readFully(record);
+            if (length == 0)
+            {
+                return false;
+            }
+            if (length < record.length)
+            {
+                throw new EOFException("Truncated board");
+            }
+            int mask = (1 << bits) - 1;
+            long buffer = 0;
+            int buffered = 0;
+            int k = 0;
+            for (int cell = 0; cell < bdSize * bdSize; cell++)
+            {
+                while (buffered < bits)
+                {
+                    buffer = buffer << 8 | (record[k++] & 0xff);
+                    buffered += 8;
+                }
+                buffered -= bits;
+                int value = (int) (buffer >>> buffered) & mask;
+                if (value > bdSize)
+                {
+                    throw new IOException("Invalid value " + value);
+                }
+                cells[cell] = value;
+            }
+            return true;
+        }
+
+        /**
+         * @return the number of bytes read, less than bytes.length only at
+         * the end of the stream
+         */
+        private int readFully(byte[] bytes) throws IOException
+        {
+            int length = 0;
+            while (length < bytes.length)
+            {
+                int count = in.read(bytes, length, bytes.length - length);
+                if (count < 0)
+                {
+                    break;
+                }
+                length += count;
+            }
+            return length;
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
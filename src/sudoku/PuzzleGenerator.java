@@ -0,0 +1,300 @@
+package sudoku;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates Sudoku puzzles that have exactly one solution, on every core.
+ *
+ * Each puzzle starts from a random solved grid: the blocks on the
+ * diagonal do not constrain each other, so they are filled with random
+ * permutations and the solver completes the rest.  Givens are then taken
+ * away in random order, and each removal is kept only if the puzzle stays
+ * unique.  Taking away the given v of a cell keeps the puzzle unique
+ * exactly when the puzzle with "not v" in that cell has no solution, so
+ * each check is a single search that usually fails in propagation.
+ * Going through every cell once leaves a minimal puzzle, in which no
+ * given can be removed.  These checks propagate with hidden singles
+ * only, which makes them several times cheaper than with subsets.
+ *
+ * Usage: PuzzleGenerator count output [givens] [difficulty] [threads] [seed]
+ */
+public class PuzzleGenerator
+{
+    /**
+     * How hard a puzzle is for the solver's propagation.
+     */
+    public enum Difficulty
+    {
+        /**
+         * Solved by naked and hidden singles alone.
+         */
+        EASY,
+        /**
+         * Needs naked or hidden pairs or triples, but no splitting.
+         */
+        MEDIUM,
+        /**
+         * Needs domain splitting.
+         */
+        HARD
+    }
+
+    /**
+     * Grids tried for each puzzle before giving up on the requested
+     * givens and difficulty.
+     */
+    private static final int MAX_ATTEMPTS = 1000;
+
+    private final SudokuSolver solver;
+    /**
+     * Completes grids and checks uniqueness.
+     */
+    private final SudokuSolver checker;
+    private final ForkJoinPool pool;
+    private final int blockWidth;
+
+    /**
+     * @param solver rates puzzles with its propagation settings; it must
+     * not be reconfigured while puzzles are generated
+     * @param pool the pool the puzzles are generated in
+     * @param blockWidth 3 for 9x9 puzzles
+     */
+    public PuzzleGenerator(SudokuSolver solver, ForkJoinPool pool, int blockWidth)
+    {
+        this.solver = solver;
+        this.pool = pool;
+        checker = new SudokuSolver();
+        checker.setUnitSubsetSize(1);
+        this.blockWidth = blockWidth;
+    }
+
+    public static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 2)
+        {
+            System.err.println("Usage: PuzzleGenerator count output [givens] [difficulty] [threads] [seed]");
+            System.exit(1);
+        }
+        int count = Integer.parseInt(argv[0]);
+        int givens = argv.length > 2 ? Integer.parseInt(argv[2]) : 0;
+        Difficulty difficulty = argv.length > 3 && !argv[3].equals("any") ? Difficulty.valueOf(argv[3].toUpperCase()) : null;
+        int threads = argv.length > 4 ? Integer.parseInt(argv[4]) : Runtime.getRuntime().availableProcessors();
+        long seed = argv.length > 5 ? Long.parseLong(argv[5]) : System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        PuzzleGenerator generator = new PuzzleGenerator(new SudokuSolver(), pool, 3);
+        long start = System.nanoTime();
+        int[][][] puzzles;
+        try
+        {
+            puzzles = generator.generate(count, givens, difficulty, seed);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        Writer out = new BufferedWriter(new FileWriter(argv[1]));
+        int written = 0;
+        try
+        {
+            for (int[][] puzzle : puzzles)
+            {
+                if (puzzle != null)
+                {
+                    out.write(SudokuUtil.formatBoardDots(puzzle));
+                    out.write('\n');
+                    written++;
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.printf("%d puzzles in %.3f s: %.0f puzzles/s%n", written, elapsed / 1e9, written * 1e9 / elapsed);
+    }
+
+    /**
+     * Generates puzzles in parallel.  The puzzle at each index depends
+     * only on the seed and the index, not on the number of threads.
+     * @param count number of puzzles
+     * @param givens number of givens each puzzle should have, or 0 for
+     * minimal puzzles with as many givens as it takes
+     * @param difficulty the band each puzzle should fall in, or null for any
+     * @param seed
+     * @return the puzzles; null where no puzzle meeting the requirements
+     * was found in MAX_ATTEMPTS tries
+     */
+    public int[][][] generate(int count, int givens, Difficulty difficulty, long seed)
+    {
+        int[][][] puzzles = new int[count][][];
+        pool.invoke(new GenerateRange(puzzles, givens, difficulty, seed, 0, count));
+        return puzzles;
+    }
+
+    /**
+     * Generates one puzzle on the calling thread.
+     * @param random
+     * @param givens number of givens the puzzle should have, or 0 for a minimal puzzle
+     * @param difficulty the band the puzzle should fall in, or null for any
+     * @return the puzzle, or null if none was found in MAX_ATTEMPTS tries
+     */
+    public int[][] generate(Random random, int givens, Difficulty difficulty)
+    {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+        {
+            int[][] puzzle = dig(randomGrid(random), random, givens);
+            if (puzzle != null && (difficulty == null || rate(puzzle) == difficulty))
+            {
+                return puzzle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param puzzle a puzzle with a unique solution
+     * @return how hard the puzzle is for the solver's propagation
+     */
+    public Difficulty rate(int[][] puzzle)
+    {
+        SudokuSolver.SudokuProblem sp = solver.problemWithBoard(puzzle);
+        sp.makeConsistent();
+        if (!sp.isSolved())
+        {
+            return Difficulty.HARD;
+        }
+        sp = checker.problemWithBoard(puzzle);
+        sp.makeConsistent();
+        return sp.isSolved() ? Difficulty.EASY : Difficulty.MEDIUM;
+    }
+
+    /**
+     * @return a random solved grid
+     */
+    private int[][] randomGrid(Random random)
+    {
+        int n = blockWidth * blockWidth;
+        int[][] board = new int[n][n];
+        for (int block = 0; block < blockWidth; block++)
+        {
+            int[] digits = shuffled(n, random);
+            for (int k = 0; k < n; k++)
+            {
+                board[block * blockWidth + k / blockWidth][block * blockWidth + k % blockWidth] = digits[k];
+            }
+        }
+        SudokuSolver.SudokuProblem sp = checker.problemWithBoard(board);
+        sp.countSolutions(1);
+        return SudokuSolver.domainsToBoard(sp.getDomains());
+    }
+
+    /**
+     * Takes givens away from a solved grid in random order for as long
+     * as the puzzle keeps a unique solution.
+     * @param board a solved grid, which becomes the puzzle
+     * @param givens stop once this many givens are left, or 0 to go on
+     * until the puzzle is minimal
+     * @return the puzzle, or null if it could not be brought down to givens
+     */
+    private int[][] dig(int[][] board, Random random, int givens)
+    {
+        int n = board.length;
+        int[] cells = shuffled(n * n, random);
+        int left = n * n;
+        for (int k = 0; k < cells.length && left > givens; k++)
+        {
+            int cell = cells[k] - 1;
+            int value = board[cell / n][cell % n];
+            board[cell / n][cell % n] = 0;
+            if (isOnlyValue(board, cell, value))
+            {
+                left--;
+            }
+            else
+            {
+                board[cell / n][cell % n] = value;
+            }
+        }
+        return left > givens && givens > 0 ? null : board;
+    }
+
+    /**
+     * @param board a puzzle with at least one solution
+     * @param cell an empty cell of the board
+     * @param value the value of the cell in a known solution
+     * @return true if every solution has that value in the cell
+     */
+    private boolean isOnlyValue(int[][] board, int cell, int value)
+    {
+        SudokuSolver.SudokuProblem sp = checker.problemWithBoard(board);
+        sp.restrictDomain(cell, sp.getDomains()[cell] & ~(1L << (value - 1)));
+        return sp.countSolutions(1) == 0;
+    }
+
+    /**
+     * @return the numbers 1 to count in random order
+     */
+    private static int[] shuffled(int count, Random random)
+    {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            values[i] = i + 1;
+        }
+        for (int i = count - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+
+    /**
+     * Generates puzzles[from, to), splitting the range in halves until it
+     * is a single puzzle or none.
+     */
+    private final class GenerateRange extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final int[][][] puzzles;
+        private final int givens;
+        private final Difficulty difficulty;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        GenerateRange(int[][][] puzzles, int givens, Difficulty difficulty, long seed, int from, int to)
+        {
+            this.puzzles = puzzles;
+            this.givens = givens;
+            this.difficulty = difficulty;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= 1)
+            {
+                if (to > from)
+                {
+                    puzzles[from] = generate(new Random(seed + from * 0x9E3779B97F4A7C15L), givens, difficulty);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GenerateRange(puzzles, givens, difficulty, seed, from, middle),
+                    new GenerateRange(puzzles, givens, difficulty, seed, middle, to));
+        }
+    }
+}
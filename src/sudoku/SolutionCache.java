@@ -0,0 +1,105 @@
+package sudoku;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An engine that remembers the solutions of the boards solved through it,
+ * keyed by their canonical form, so that a board that is a relabelled,
+ * rotated, transposed or band and stack permuted copy of one solved before
+ * is answered without a search.  See BoardTransform for the symmetries.
+ *
+ * The least recently used solution is dropped once the cache is full.
+ * A cache may be shared between threads, but only between solvers with
+ * the same settings: a solution cached without the uniqueness check is
+ * also returned to a solver that asks for it.  Boards that have no
+ * solution are not cached.
+ */
+public class SolutionCache implements SudokuSolver.Engine
+{
+    private final SudokuSolver.Engine engine;
+    private final Map<String, int[][]> solutions;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param engine solves the boards that are not in the cache
+     * @param capacity the most solutions kept
+     */
+    public SolutionCache(SudokuSolver.Engine engine, final int capacity)
+    {
+        this.engine = engine;
+        solutions = new LinkedHashMap<String, int[][]>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, int[][]> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public int[][] solve(SudokuSolver solver, int[][] board) throws SudokuSolver.InvalidSudokuBoardException
+    {
+        BoardTransform transform = BoardTransform.canonical(board);
+        String key = transform.getKey();
+        int[][] canonicalSolution;
+        synchronized (solutions)
+        {
+            canonicalSolution = solutions.get(key);
+        }
+        if (canonicalSolution != null)
+        {
+            hits.incrementAndGet();
+            return transform.invert(canonicalSolution);
+        }
+        misses.incrementAndGet();
+        int[][] solution = engine.solve(solver, board);
+        canonicalSolution = transform.apply(solution);
+        synchronized (solutions)
+        {
+            solutions.put(key, canonicalSolution);
+        }
+        return solution;
+    }
+
+    /**
+     * @return the number of boards answered from the cache
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of boards passed on to the engine
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of solutions in the cache
+     */
+    public int size()
+    {
+        synchronized (solutions)
+        {
+            return solutions.size();
+        }
+    }
+
+    /**
+     * Drops every cached solution.  The counters are kept.
+     */
+    public void clear()
+    {
+        synchronized (solutions)
+        {
+            solutions.clear();
+        }
+    }
+}
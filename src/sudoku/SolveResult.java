@@ -0,0 +1,132 @@
+package sudoku;
+
+/**
+ * A solved board together with the counters of the search that solved it,
+ * as returned by SudokuSolver.solveWithStatistics and the bounded solve
+ * overloads.  A bounded solve that runs out of budget has no board and
+ * the counters of the search up to the point where it stopped.
+ */
+public final class SolveResult
+{
+    /**
+     * How a solve ended.
+     */
+    public enum Outcome
+    {
+        SOLVED,
+        DEADLINE_EXCEEDED,
+        NODE_LIMIT_EXCEEDED,
+        CANCELLED
+    }
+
+    private final Outcome outcome;
+    private final int[][] board;
+    private final long nodes;
+    private final long revisions;
+    private final long prunings;
+    private final long splits;
+    private final int maxDepth;
+    private final long deadEnds;
+    private final long restarts;
+
+    SolveResult(Outcome outcome, int[][] board, long nodes, long revisions, long prunings, long splits, int maxDepth,
+            long deadEnds, long restarts)
+    {
+        this.outcome = outcome;
+        this.board = board;
+        this.nodes = nodes;
+        this.revisions = revisions;
+        this.prunings = prunings;
+        this.splits = splits;
+        this.maxDepth = maxDepth;
+        this.deadEnds = deadEnds;
+        this.restarts = restarts;
+    }
+
+    public Outcome getOutcome()
+    {
+        return outcome;
+    }
+
+    /**
+     * @return true if the board was solved, false if the search ran out of budget
+     */
+    public boolean isSolved()
+    {
+        return outcome == Outcome.SOLVED;
+    }
+
+    /**
+     * @return the solved board, or null if the search ran out of budget
+     */
+    public int[][] getBoard()
+    {
+        return board;
+    }
+
+    /**
+     * @return the number of nodes of the search tree visited
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * @return the number of arc revisions, or peer checks with
+     * SINGLETON_EVENTS propagation
+     */
+    public long getRevisions()
+    {
+        return revisions;
+    }
+
+    /**
+     * @return the number of values removed from domains by propagation,
+     * not counting the ones removed by splits
+     */
+    public long getPrunings()
+    {
+        return prunings;
+    }
+
+    /**
+     * @return the number of domain splits
+     */
+    public long getSplits()
+    {
+        return splits;
+    }
+
+    /**
+     * @return the deepest level of the search tree reached, 0 if the
+     * board was solved by propagation alone
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of search nodes found to be infeasible
+     */
+    public long getDeadEnds()
+    {
+        return deadEnds;
+    }
+
+    /**
+     * @return the number of times the search went back to the root, 0
+     * unless the solver restarts
+     */
+    public long getRestarts()
+    {
+        return restarts;
+    }
+
+    public String toString()
+    {
+        return outcome + " nodes=" + nodes + " revisions=" + revisions + " prunings=" + prunings + " splits=" + splits
+                + " maxDepth=" + maxDepth + " deadEnds=" + deadEnds + (restarts > 0 ? " restarts=" + restarts : "");
+    }
+}
@@ -0,0 +1,530 @@
+package sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Solves Sudoku boards sent over TCP.
+ *
+ * A request is either one line in the format of SudokuUtil.parseBoardDots,
+ * or a board in the format of SudokuUtil.formatBoardComma: as many lines
+ * of comma separated numbers as the first line has numbers.  Blank lines
+ * between requests are skipped.  Each request gets a status line,
+ *
+ *   OK queue=&lt;us&gt; solve=&lt;us&gt;
+ *
+ * followed by the solution in the format of the request, or
+ *
+ *   ERR queue=&lt;us&gt; solve=&lt;us&gt; &lt;reason&gt;
+ *
+ * where the reason is the message of the InvalidSudokuBoardException, or
+ * the outcome if the solve ran past the time limit.  queue is the time from
+ * having read the whole request to a worker starting on it, and solve the
+ * time the worker spent on it.
+ *
+ * A client may send any number of requests without waiting for the
+ * answers; they come back in the order the requests were sent.  Up to
+ * MAX_PENDING requests of a connection are in flight, after which the
+ * server stops reading from it until answers have been written.  Boards
+ * are solved by a fixed number of workers, one per core by default, so a
+ * burst of requests queues up instead of starting a thread each.  The
+ * connections are served on virtual threads where the JVM has them, and on
+ * a cached pool of platform threads otherwise.
+ *
+ * Usage: SolveServer port [workers] [timeoutMillis]
+ */
+public class SolveServer implements Closeable
+{
+    /**
+     * Requests of one connection that may be waiting for their answer.
+     */
+    private static final int MAX_PENDING = 256;
+
+    /**
+     * Time to wait before accepting again after accept failed.
+     */
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    /**
+     * Tells the writer of a connection that no more requests will come.
+     */
+    private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+    private final SudokuSolver solver;
+    private final long timeoutMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final ExecutorService connections;
+
+    /**
+     * Listens on the loopback address.
+     * @param solver solves each board; it must not be reconfigured while the server runs
+     * @param port the port to listen on, or 0 for any free port
+     * @param workerCount number of boards solved at the same time
+     * @param timeoutMillis time a board may take before it is answered with
+     * DEADLINE_EXCEEDED, or 0 for no limit; with a limit the board is solved
+     * by arc consistency search whatever the engine of the solver
+     * @throws IOException if the port cannot be bound
+     */
+    public SolveServer(SudokuSolver solver, int port, int workerCount, long timeoutMillis) throws IOException
+    {
+        this.solver = solver;
+        this.timeoutMillis = timeoutMillis;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        workers = Executors.newFixedThreadPool(workerCount, daemonThreads("solve-worker-"));
+        connections = newConnectionExecutor();
+    }
+
+    public static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 1)
+        {
+            System.err.println("Usage: SolveServer port [workers] [timeoutMillis]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(argv[0]);
+        int workerCount = argv.length > 1 ? Integer.parseInt(argv[1]) : Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = argv.length > 2 ? Long.parseLong(argv[2]) : 0;
+        SolveServer server = new SolveServer(new SudokuSolver(), port, workerCount, timeoutMillis);
+        System.out.println("Listening on port " + server.getPort() + " with " + workerCount + " workers");
+        server.serve();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections in the background until the server is closed.
+     */
+    public void start()
+    {
+        connections.execute(new Runnable()
+        {
+            public void run()
+            {
+                serve();
+            }
+        });
+    }
+
+    /**
+     * Accepts connections on the calling thread until the server is closed
+     * or the thread is interrupted.
+     */
+    public void serve()
+    {
+        while (!serverSocket.isClosed())
+        {
+            final Socket socket;
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                if (serverSocket.isClosed())
+                {
+                    // closed by close()
+                    return;
+                }
+                // out of file descriptors, for one; wait for connections to
+                // end instead of failing again at once
+                try
+                {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                }
+                catch (InterruptedException interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            connections.execute(new Runnable()
+            {
+                public void run()
+                {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the workers.  Open connections
+     * are dropped.
+     */
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Reads the requests of a connection and hands them to the workers,
+     * while another thread writes the answers back in order.
+     */
+    private void handle(final Socket socket)
+    {
+        final BlockingQueue<CompletableFuture<String>> pending = new ArrayBlockingQueue<CompletableFuture<String>>(
+                MAX_PENDING);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        connections.execute(new Runnable()
+        {
+            public void run()
+            {
+                writeAnswers(socket, pending, writing);
+            }
+        });
+        try
+        {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if (!line.isEmpty() && !enqueue(pending, submit(line, in), writing))
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // the client went away; answer what was read
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            try
+            {
+                enqueue(pending, END, writing);
+            }
+            catch (InterruptedException e)
+            {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Queues an answer for the writer of a connection, waiting while
+     * MAX_PENDING answers are queued.
+     * @param writing cleared once the writer has stopped
+     * @return false if the writer has stopped, so that nothing would ever
+     * take the answer
+     */
+    private static boolean enqueue(BlockingQueue<CompletableFuture<String>> pending, CompletableFuture<String> answer,
+            AtomicBoolean writing) throws InterruptedException
+    {
+        while (!pending.offer(answer, 100, TimeUnit.MILLISECONDS))
+        {
+            if (!writing.get())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the answers of a connection in the order of the requests, and
+     * closes the connection after the last one.  The output is flushed
+     * whenever no finished answer is waiting, so that pipelined answers
+     * share packets.  If the client stops reading, the writer gives up and
+     * empties the queue, so that the reader does not wait for room in it.
+     */
+    private void writeAnswers(Socket socket, BlockingQueue<CompletableFuture<String>> pending, AtomicBoolean writing)
+    {
+        try
+        {
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.US_ASCII));
+            while (true)
+            {
+                CompletableFuture<String> answer = pending.peek();
+                if (answer == null || !answer.isDone())
+                {
+                    out.flush();
+                }
+                answer = pending.take();
+                if (answer == END)
+                {
+                    break;
+                }
+                out.write(text(answer));
+            }
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // the client went away
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            writing.set(false);
+            pending.clear();
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return the text of a finished answer, or an error line if the
+     * worker failed in a way answer does not report itself
+     */
+    private static String text(CompletableFuture<String> answer) throws InterruptedException
+    {
+        try
+        {
+            return answer.get();
+        }
+        catch (ExecutionException e)
+        {
+            return error(0, 0, String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * Parses a request and queues it for the workers.  A comma separated
+     * board takes the lines after its first one from in.
+     * @param first the first line of the request, trimmed
+     * @return the answer, once a worker has finished it
+     */
+    private CompletableFuture<String> submit(String first, BufferedReader in) throws IOException
+    {
+        final boolean comma = first.indexOf(',') >= 0;
+        int[][] parsed;
+        if (comma)
+        {
+            parsed = parseComma(first, in);
+        }
+        else
+        {
+            try
+            {
+                parsed = SudokuUtil.parseBoardDots(first, boardSize(first.length()));
+            }
+            catch (IOException e)
+            {
+                parsed = null;
+            }
+        }
+        if (parsed == null)
+        {
+            return CompletableFuture.completedFuture(error(0, 0, "Invalid board"));
+        }
+        final int[][] board = parsed;
+        // after the last row, so that queue does not count a slow client
+        final long received = System.nanoTime();
+        return CompletableFuture.supplyAsync(new Supplier<String>()
+        {
+            public String get()
+            {
+                return answer(board, comma, received);
+            }
+        }, workers);
+    }
+
+    /**
+     * Solves a board on a worker.
+     * @return the status line and, if solved, the solution
+     */
+    private String answer(int[][] board, boolean comma, long received)
+    {
+        long start = System.nanoTime();
+        int[][] solution;
+        String reason = null;
+        try
+        {
+            if (timeoutMillis > 0)
+            {
+                SolveResult result = solver.solve(board, timeoutMillis, TimeUnit.MILLISECONDS);
+                solution = result.getBoard();
+                if (!result.isSolved())
+                {
+                    reason = result.getOutcome().toString();
+                }
+            }
+            else
+            {
+                solution = solver.solve(board);
+            }
+        }
+        catch (SudokuSolver.InvalidSudokuBoardException e)
+        {
+            solution = null;
+            reason = e.getMessage();
+        }
+        catch (RuntimeException e)
+        {
+            // a board of an unsupported size, for one
+            solution = null;
+            reason = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        catch (StackOverflowError e)
+        {
+            // a search too deep for the stack of the worker
+            solution = null;
+            reason = e.toString();
+        }
+        long end = System.nanoTime();
+        long queueMicros = (start - received) / 1000;
+        long solveMicros = (end - start) / 1000;
+        if (reason != null)
+        {
+            return error(queueMicros, solveMicros, reason);
+        }
+        String text = comma ? SudokuUtil.formatBoardComma(solution) : SudokuUtil.formatBoardDots(solution) + "\n";
+        return "OK queue=" + queueMicros + " solve=" + solveMicros + "\n" + text;
+    }
+
+    private static String error(long queueMicros, long solveMicros, String reason)
+    {
+        return "ERR queue=" + queueMicros + " solve=" + solveMicros + " " + reason.replace('\n', ' ') + "\n";
+    }
+
+    /**
+     * @param cells number of characters of a dot string
+     * @return the number of rows of the board, or 0 if it is not square
+     */
+    private static int boardSize(int cells)
+    {
+        int n = (int) Math.round(Math.sqrt(cells));
+        return n * n == cells ? n : 0;
+    }
+
+    /**
+     * Reads a comma separated board whose first row is already read.
+     * @return the board, or null if it is malformed
+     * @throws IOException if the connection ends before the last row
+     */
+    private static int[][] parseComma(String first, BufferedReader in) throws IOException
+    {
+        int n = first.split(",").length;
+        int[][] board = new int[n][];
+        boolean valid = true;
+        String line = first;
+        for (int row = 0; row < n; row++)
+        {
+            if (row > 0)
+            {
+                line = in.readLine();
+                if (line == null)
+                {
+                    throw new EOFException();
+                }
+            }
+            board[row] = parseRow(line.trim().split(","), n);
+            valid &= board[row] != null;
+        }
+        return valid ? board : null;
+    }
+
+    /**
+     * @return the numbers of a row, or null if there are not n of them
+     * from 0 to n
+     */
+    private static int[] parseRow(String[] fields, int n)
+    {
+        if (fields.length != n)
+        {
+            return null;
+        }
+        int[] row = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            try
+            {
+                row[i] = Integer.parseInt(fields[i].trim());
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+            if (row[i] < 0 || row[i] > n)
+            {
+                return null;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @return an executor that runs each task on a new virtual thread, or a
+     * cached pool of daemon threads on a JVM without virtual threads
+     */
+    private static ExecutorService newConnectionExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(daemonThreads("solve-connection-"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static void closeQuietly(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // nothing left to do
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package sudoku;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times each solving engine on every Sudoku board in a directory.
+ *
+ * Usage: SudokuBenchmark [directory], where the directory defaults to the
+ * current one.  Every *.sud file that is not a *Solution.sud file is solved
+ * repeatedly by each engine and the average time per solve is printed.
+ */
+public class SudokuBenchmark
+{
+    /**
+     * Each board is solved until this much time has passed, after warming up.
+     */
+    private static final long MEASURE_NANOS = 1000000000L;
+    private static final int WARMUP_SOLVES = 5;
+
+    private static final String[] ENGINE_NAMES = { "AC", "DLX", "Bitboard" };
+    private static final SudokuSolver.Engine[] ENGINES = {
+            SudokuSolver.ARC_CONSISTENCY_ENGINE,
+            SudokuSolver.DANCING_LINKS_ENGINE,
+            SudokuSolver.BITBOARD_ENGINE };
+
+    public static void main(String[] argv) throws IOException
+    {
+        File dir = new File(argv.length > 0 ? argv[0] : ".");
+        String[] files = dir.list(new FilenameFilter()
+        {
+            public boolean accept(File d, String name)
+            {
+                return name.endsWith(".sud") && !name.endsWith("Solution.sud");
+            }
+        });
+        Arrays.sort(files);
+
+        System.out.printf("%-25s", "board");
+        for (String name : ENGINE_NAMES)
+        {
+            System.out.printf("%15s", name + " (us)");
+        }
+        System.out.println();
+        for (String file : files)
+        {
+            int[][] board = SudokuUtil.readInBoard(new File(dir, file).getPath(), 9);
+            System.out.printf("%-25s", file.substring(0, file.length() - ".sud".length()));
+            for (SudokuSolver.Engine engine : ENGINES)
+            {
+                System.out.printf("%15.1f", averageMicros(engine, board));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return the average time in microseconds that the engine takes to
+     * solve the board, or to find out that it has no solution
+     */
+    private static double averageMicros(SudokuSolver.Engine engine, int[][] board)
+    {
+        SudokuSolver solver = new SudokuSolver();
+        solver.setEngine(engine);
+        for (int i = 0; i < WARMUP_SOLVES; i++)
+        {
+            solveOnce(solver, board);
+        }
+        long start = System.nanoTime();
+        long elapsed;
+        int solves = 0;
+        do
+        {
+            solveOnce(solver, board);
+            solves++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return elapsed / 1000.0 / solves;
+    }
+
+    private static void solveOnce(SudokuSolver solver, int[][] board)
+    {
+        try
+        {
+            solver.solve(board);
+        }
+        catch (SudokuSolver.InvalidSudokuBoardException e)
+        {
+            // timed all the same
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A board being played, which keeps the candidates of every cell up to
+ * date as digits are placed and erased.
+ *
+ * The candidates are the domains the solver's propagation leaves, so they
+ * take the givens and every placed digit into account.  Placing a digit
+ * narrows one cell and propagates from there only, instead of building
+ * the problem again from the board.  Every move remembers where the undo
+ * trail of the problem stood before it, so erasing the last move just
+ * rolls the trail back; erasing an earlier one rolls back to it and
+ * places the later moves again.
+ */
+public class SudokuSession
+{
+    /**
+     * The state of the board after a move.
+     */
+    public enum Status
+    {
+        /**
+         * No contradiction found so far.
+         */
+        OK,
+        /**
+         * A placed digit is also in a given or placed cell of the same
+         * row, column or block.
+         */
+        CONFLICT,
+        /**
+         * No rule is broken yet, but propagation shows that the board
+         * cannot be completed from here.
+         */
+        DEAD_END,
+        /**
+         * Every cell holds a given or a placed digit and no rule is broken.
+         */
+        COMPLETE
+    }
+
+    /**
+     * A placed digit, the size of the trail before it was placed, and
+     * whether propagation had found a dead end once it was.  undoTo
+     * forgets contradictions that do not show as an empty domain, so
+     * the dead end is kept here.
+     */
+    private static final class Move
+    {
+        final int cell;
+        final int digit;
+        int mark;
+        boolean deadEnd;
+
+        Move(int cell, int digit)
+        {
+            this.cell = cell;
+            this.digit = digit;
+        }
+    }
+
+    private final SudokuSolver.SudokuProblem sp;
+    private final int n;
+    private final int blockWidth;
+    /**
+     * The givens and placed digits, row * n + col, 0 for an empty cell.
+     */
+    private final int[] values;
+    private final boolean[] given;
+    /**
+     * Placed digits, oldest first.
+     */
+    private final List<Move> moves = new ArrayList<Move>();
+    /**
+     * Whether the givens alone lead to a dead end.
+     */
+    private final boolean deadEnd;
+    private Status status;
+
+    /**
+     * @param solver propagates with its settings
+     * @param givens the puzzle, with 0 for empty cells
+     * @throws IllegalArgumentException if the board size is not supported
+     */
+    public SudokuSession(SudokuSolver solver, int[][] givens)
+    {
+        n = givens.length;
+        blockWidth = (int) Math.round(Math.sqrt(n));
+        sp = solver.problemWithBoard(givens);
+        values = new int[n * n];
+        given = new boolean[n * n];
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                values[i * n + j] = givens[i][j];
+                given[i * n + j] = givens[i][j] != 0;
+            }
+        }
+        sp.makeConsistent();
+        deadEnd = sp.isInfeasible();
+        status = computeStatus();
+    }
+
+    /**
+     * Places a digit, replacing the digit placed in the cell before if any.
+     * @param row from 0
+     * @param col from 0
+     * @param digit from 1 to n
+     * @return the state of the board after the move
+     * @throws IllegalArgumentException if the cell is a given or the
+     * digit is out of range
+     */
+    public Status assign(int row, int col, int digit)
+    {
+        int cell = cellOf(row, col);
+        if (given[cell])
+        {
+            throw new IllegalArgumentException("Cell " + row + "," + col + " is a given");
+        }
+        if (digit < 1 || digit > n)
+        {
+            throw new IllegalArgumentException("Invalid digit " + digit);
+        }
+        int index = indexOfMove(cell);
+        if (index >= 0)
+        {
+            removeMove(index);
+        }
+        moves.add(new Move(cell, digit));
+        place(moves.size() - 1);
+        status = computeStatus();
+        return status;
+    }
+
+    /**
+     * Erases the digit placed in a cell.  Nothing happens if none was.
+     * @param row from 0
+     * @param col from 0
+     * @return the state of the board after the move
+     * @throws IllegalArgumentException if the cell is a given
+     */
+    public Status unassign(int row, int col)
+    {
+        int cell = cellOf(row, col);
+        if (given[cell])
+        {
+            throw new IllegalArgumentException("Cell " + row + "," + col + " is a given");
+        }
+        int index = indexOfMove(cell);
+        if (index >= 0)
+        {
+            removeMove(index);
+            status = computeStatus();
+        }
+        return status;
+    }
+
+    /**
+     * @return the state of the board after the last move
+     */
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return bitmask of the digits still possible in the cell: bit
+     * (d - 1) is set when digit d is.  After a dead end, these are the
+     * candidates left by the move that led to it.
+     */
+    public long getCandidates(int row, int col)
+    {
+        return sp.getDomains()[cellOf(row, col)];
+    }
+
+    /**
+     * @return the candidates of every cell, row * n + col, in the form
+     * of getCandidates
+     */
+    public long[] getCandidates()
+    {
+        return sp.getDomains().clone();
+    }
+
+    /**
+     * @return the given or placed digit of the cell, 0 if it is empty
+     */
+    public int getValue(int row, int col)
+    {
+        return values[cellOf(row, col)];
+    }
+
+    public boolean isGiven(int row, int col)
+    {
+        return given[cellOf(row, col)];
+    }
+
+    /**
+     * @return the givens and placed digits, with 0 for empty cells
+     */
+    public int[][] getBoard()
+    {
+        int[][] board = new int[n][n];
+        for (int i = 0; i < n; i++)
+        {
+            System.arraycopy(values, i * n, board[i], 0, n);
+        }
+        return board;
+    }
+
+    /**
+     * Narrows the cell of a move to its digit and propagates.  The digit
+     * is placed even if propagation had already ruled it out, in which
+     * case the problem becomes infeasible.  Once the board is a dead end
+     * further moves are only recorded, since the candidates can tell
+     * nothing more until the move that led there is erased.
+     * @param index of the move in moves
+     */
+    private void place(int index)
+    {
+        Move move = moves.get(index);
+        move.mark = sp.getTrailSize();
+        values[move.cell] = move.digit;
+        if (isDeadEnd(index))
+        {
+            move.deadEnd = true;
+            return;
+        }
+        sp.restrictDomain(move.cell, 1L << (move.digit - 1));
+        sp.makeConsistent();
+        move.deadEnd = sp.isInfeasible();
+    }
+
+    /**
+     * @return whether the givens and the moves before index lead to a dead end
+     */
+    private boolean isDeadEnd(int index)
+    {
+        return index == 0 ? deadEnd : moves.get(index - 1).deadEnd;
+    }
+
+    /**
+     * Rolls the trail back to before a move and places the later moves
+     * again.
+     */
+    private void removeMove(int index)
+    {
+        Move removed = moves.remove(index);
+        sp.undoTo(removed.mark);
+        values[removed.cell] = 0;
+        for (int i = index; i < moves.size(); i++)
+        {
+            place(i);
+        }
+    }
+
+    private int indexOfMove(int cell)
+    {
+        for (int i = moves.size() - 1; i >= 0; i--)
+        {
+            if (moves.get(i).cell == cell)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Status computeStatus()
+    {
+        boolean full = true;
+        for (int cell = 0; cell < n * n; cell++)
+        {
+            if (values[cell] == 0)
+            {
+                full = false;
+            }
+            else if (breaksRule(cell))
+            {
+                return Status.CONFLICT;
+            }
+        }
+        if (isDeadEnd(moves.size()))
+        {
+            return Status.DEAD_END;
+        }
+        return full ? Status.COMPLETE : Status.OK;
+    }
+
+    /**
+     * @return true if the digit of the cell is also in a later cell of
+     * its row, column or block
+     */
+    private boolean breaksRule(int cell)
+    {
+        int row = cell / n;
+        int col = cell % n;
+        int value = values[cell];
+        for (int k = col + 1; k < n; k++)
+        {
+            if (values[row * n + k] == value)
+            {
+                return true;
+            }
+        }
+        for (int k = row + 1; k < n; k++)
+        {
+            if (values[k * n + col] == value)
+            {
+                return true;
+            }
+        }
+        int top = row - row % blockWidth;
+        int left = col - col % blockWidth;
+        for (int i = top; i < top + blockWidth; i++)
+        {
+            for (int j = left; j < left + blockWidth; j++)
+            {
+                if (i * n + j > cell && i != row && j != col && values[i * n + j] == value)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int cellOf(int row, int col)
+    {
+        if (row < 0 || row >= n || col < 0 || col >= n)
+        {
+            throw new IllegalArgumentException("No cell " + row + "," + col);
+        }
+        return row * n + col;
+    }
+}
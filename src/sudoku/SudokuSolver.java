@@ -1,17 +1,276 @@
 package sudoku;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Place for your code.
  */
 public class SudokuSolver {
-    private static final int BLOCK_WIDTH = 3;
-    private static final int N = 9;
+    /**
+     * Largest block width supported.  Domains are held in a long, so a
+     * board can have at most 64 digits.
+     */
+    private static final int MAX_BLOCK_WIDTH = 8;
+    /**
+     * The constraint graph of each board size, indexed by block width
+     * and built on first use.
+     */
+    private static final AtomicReferenceArray<Grid> GRIDS = new AtomicReferenceArray<Grid>(MAX_BLOCK_WIDTH + 1);
+    /**
+     * Longest nogood a backjumping search keeps.  Longer ones are specific
+     * to one corner of the tree and rarely prune again.
+     */
+    private static final int MAX_NOGOOD_LENGTH = 16;
+
+    /**
+     * Decides which cell the search splits on next.
+     */
+    public interface VariableOrdering
+    {
+        /**
+         * @param sp a problem that is arc consistent but not yet solved
+         * @return a cell with more than one value left, or -1 if there is none
+         */
+        int chooseVariable(SudokuProblem sp);
+    }
+
+    /**
+     * Picks the first undecided cell in row-major order.
+     */
+    public static final VariableOrdering ROW_MAJOR = new VariableOrdering()
+    {
+        public int chooseVariable(SudokuProblem sp)
+        {
+            long[] domains = sp.getDomains();
+            for (int cell = 0; cell < domains.length; cell++)
+            {
+                if (Long.bitCount(domains[cell]) > 1)
+                {
+                    return cell;
+                }
+            }
+            return -1;
+        }
+    };
+
+    /**
+     * Picks the undecided cell with the fewest values left (minimum
+     * remaining values), breaking ties by the number of undecided peers.
+     */
+    public static final VariableOrdering MRV_DEGREE = new VariableOrdering()
+    {
+        public int chooseVariable(SudokuProblem sp)
+        {
+            long[] domains = sp.getDomains();
+            int best = -1;
+            int bestSize = Integer.MAX_VALUE;
+            int bestDegree = -1;
+            for (int cell = 0; cell < domains.length; cell++)
+            {
+                int size = Long.bitCount(domains[cell]);
+                if (size <= 1 || size > bestSize)
+                {
+                    continue;
+                }
+                int degree = sp.degree(cell);
+                if (size < bestSize || degree > bestDegree)
+                {
+                    best = cell;
+                    bestSize = size;
+                    bestDegree = degree;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * Picks the undecided cell with the smallest ratio of values left to
+     * weighted degree (dom/wdeg).  The weighted degree of a cell is the sum
+     * of the weights of its row, column and block, and a unit gains weight
+     * each time it is found to cause a dead end, so the search turns to the
+     * parts of the board that have been failing.  The weights start at 1
+     * and are kept across restarts.
+     */
+    public static final VariableOrdering DOM_WDEG = new VariableOrdering()
+    {
+        public int chooseVariable(SudokuProblem sp)
+        {
+            long[] domains = sp.getDomains();
+            int best = -1;
+            long bestSize = 0;
+            long bestWeight = 0;
+            for (int cell = 0; cell < domains.length; cell++)
+            {
+                int size = Long.bitCount(domains[cell]);
+                if (size <= 1)
+                {
+                    continue;
+                }
+                long weight = sp.weightedDegree(cell);
+                if (best < 0 || size * bestWeight < bestSize * weight)
+                {
+                    best = cell;
+                    bestSize = size;
+                    bestWeight = weight;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * Which values of a domain the search tries first when it splits.
+     */
+    public enum ValueOrder
+    {
+        /**
+         * The lower half of the values, then the upper half.
+         */
+        LOWEST_FIRST,
+        /**
+         * A random half of the values, then the rest, drawn from a
+         * generator seeded with the solver's random seed so that runs
+         * can be repeated.
+         */
+        RANDOM
+    }
+
+    /**
+     * How the search splits the domain of a cell in two.
+     */
+    public enum Branching
+    {
+        /**
+         * The cell keeps half of its values in the first branch and the
+         * other half in the second.
+         */
+        HALVING,
+        /**
+         * The cell is assigned one value v in the first branch, and keeps
+         * every value but v in the second.  v is the least constraining
+         * value, the one found in the fewest peer domains, or a random one
+         * with RANDOM value order.  An assignment propagates much further
+         * than a halved domain, so the search tree is smaller.
+         */
+        ASSIGNMENT
+    }
+
+    /**
+     * When the search gives up on its tree and starts again from the
+     * root.  A run ends after a number of dead ends that grows from run
+     * to run, so the search stays complete.  Restarts only help together
+     * with RANDOM value order or DOM_WDEG, which make the next run differ.
+     */
+    public enum Restarts
+    {
+        NONE,
+        /**
+         * Run i may have restartBase * luby(i) dead ends, where luby is
+         * 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+         */
+        LUBY,
+        /**
+         * Run i may have restartBase * 1.5^(i - 1) dead ends.
+         */
+        GEOMETRIC
+    }
+
+    /**
+     * How a SudokuProblem propagates the effect of a domain change.
+     */
+    public enum Propagation
+    {
+        /**
+         * AC-3: revise arcs from the to-do list until none changes.
+         */
+        ARC_CONSISTENCY,
+        /**
+         * A cell can only prune a peer once it is down to one value, so a
+         * cell that becomes assigned removes its value from its peers and
+         * nothing else is revised.  Reaches the same fixpoint as
+         * ARC_CONSISTENCY with far fewer revisions.
+         */
+        SINGLETON_EVENTS
+    }
+
+    /**
+     * A way of solving a whole board.  Engines are stateless and may
+     * be shared between solvers and threads.
+     */
+    public interface Engine
+    {
+        /**
+         * @param solver the solver whose settings apply to this solve
+         * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+         * @return the solved Sudoku board
+         * @throws InvalidSudokuBoardException if the board has no solution
+         */
+        int[][] solve(SudokuSolver solver, int[][] board) throws InvalidSudokuBoardException;
+    }
+
+    /**
+     * Arc consistency and domain splitting, using the propagation and
+     * variable ordering settings of the solver.
+     */
+    public static final Engine ARC_CONSISTENCY_ENGINE = new Engine()
+    {
+        public int[][] solve(SudokuSolver solver, int[][] board) throws InvalidSudokuBoardException
+        {
+            return solver.problemWithBoard(board).solve();
+        }
+    };
+
+    /**
+     * Algorithm X over Dancing Links on the exact cover encoding of the board.
+     */
+    public static final Engine DANCING_LINKS_ENGINE = new DancingLinksSolver();
+
+    /**
+     * Propagation on one bitboard per digit for 9x9 boards, vectorized
+     * when the JVM has jdk.incubator.vector; see BitboardSolver.
+     */
+    public static final Engine BITBOARD_ENGINE = new BitboardSolver();
+
+    private Engine engine = ARC_CONSISTENCY_ENGINE;
+    private VariableOrdering variableOrdering = MRV_DEGREE;
+    private Propagation propagation = Propagation.SINGLETON_EVENTS;
+    /**
+     * Largest subset the all-different unit propagation looks for:
+     * 0 turns it off, 1 finds hidden singles, 2 also naked and hidden
+     * pairs and 3 also naked and hidden triples.
+     */
+    private int unitSubsetSize = 3;
+    /**
+     * Number of levels of the search tree whose sibling branches are
+     * searched in parallel; 0 searches on the calling thread only.
+     */
+    private int parallelDepth = 0;
+    private ForkJoinPool forkJoinPool = null;
+    /**
+     * If set, solve also makes sure that the solution it returns
+     * is the only one.
+     */
+    private boolean checkUniqueness = false;
+    private Branching branching = Branching.HALVING;
+    private ValueOrder valueOrder = ValueOrder.LOWEST_FIRST;
+    private long randomSeed = 0;
+    private Restarts restarts = Restarts.NONE;
+    /**
+     * Dead ends in a run of length 1 of the restart schedule.
+     */
+    private int restartBase = 32;
+    private boolean backjumping = false;
+    /**
+     * Nogoods kept by a backjumping search.
+     */
+    private int nogoodCapacity = 256;
 
 	/**
 	 * @return names of the authors and their student IDs (1 per line).
@@ -22,490 +281,1967 @@ public class SudokuSolver {
 	}
 
 	/**
-	 * Performs constraint satisfaction on the given Sudoku board using Arc Consistency and Domain Splitting.
+	 * Solves the given Sudoku board with the current engine, by default constraint satisfaction using Arc Consistency and Domain Splitting.
 	 * 
 	 * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
 	 * @return the solved Sudoku board
 	 */
 	public int[][] solve(int[][] board) throws InvalidSudokuBoardException {
-		SudokuProblem sp = sudokuProblemWithBoard(board);
-		return sp.solve();
+		return engine.solve(this, board);
 	}
 
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
     /**
-     * Converts varaibles into a board
-     * @param v
-     * @return
+     * @param engine how solve(int[][]) solves a board, for example
+     * ARC_CONSISTENCY_ENGINE (the default), DANCING_LINKS_ENGINE or
+     * BITBOARD_ENGINE
      */
-    public static int[][] variablesToBoard(Variable[][] v) {
-        int[][] board = new int[N][];
-        for (int i = 0; i < N; i++) {
-            board[i] = new int[N];
-            for (int j = 0; j < N; j++) {
-                board[i][j] = v[i][j].getValue();
-            }
-        }
-        return board;
-    
+    public void setEngine(Engine engine)
+    {
+        this.engine = engine;
+    }
+
+    public VariableOrdering getVariableOrdering()
+    {
+        return variableOrdering;
     }
+
     /**
-     * Solves a sudoku problem. If the solution is infeasible, returns null
-     * @param sp
-     * @return
+     * @param variableOrdering how the search picks the cell to split on,
+     * for example ROW_MAJOR or MRV_DEGREE (the default)
      */
-    private static SudokuProblem solve(SudokuProblem sp)
+    public void setVariableOrdering(VariableOrdering variableOrdering)
     {
-        sp.makeConsistent();
-        if (sp.isSolved())
-        {
-            return sp;
-        }
-        if (sp.isInfeasible())
-        {
-            return null;
-        }
-        SudokuProblem child = sp.split();
-        sp.makeConsistent();
-        SudokuProblem sp2 = solve(sp);
-        if (sp2 != null)
-        {
-            return sp2;
-        }
-        else
-        {
-            child.makeConsistent();
-            return solve(child);
-        }
-        
+        this.variableOrdering = variableOrdering;
     }
-	/**
-     * Creates a new sudoku problem with the given board
-     * A 0 should be used to denote an empty space
-     * @param board
-     * @return
-     * @pre  board must be a standard sized 9x9 sudoku board
+
+    public Propagation getPropagation()
+    {
+        return propagation;
+    }
+
+    /**
+     * @param propagation how problems created by this solver propagate
+     * domain changes, SINGLETON_EVENTS by default
      */
-    public static SudokuProblem sudokuProblemWithBoard(int[][] board)
+    public void setPropagation(Propagation propagation)
     {
-        SudokuSolver ss = new SudokuSolver();
-        SudokuProblem sp = ss.new SudokuProblem();
-        // Initialize all the variables
-        for (int i = 0; i < N; i++)
-        {
-            for (int j = 0; j < N; j++)
-            {
-                sp.getVariables()[i][j] = ss.new Variable(i, j, board[i][j]);
-            }
-        }
-        
-        makeConnections(sp);
-        
-        return sp;
+        this.propagation = propagation;
+    }
+
+    public int getUnitSubsetSize()
+    {
+        return unitSubsetSize;
     }
+
     /**
-     * Creates a new sudoku problem based on variables.  Does not change
-     * the variables that are passed in.
-     * This is meant to be used for domain splitting.
-     * @param vars
-     * @return
+     * @param unitSubsetSize the largest naked or hidden subset looked for
+     * in each row, column and block after arc consistency, from 0 (no
+     * unit propagation) to 3 (hidden singles, pairs and triples, the default)
      */
-    public static SudokuProblem sudokuProblemWithVariables(Variable[][] vars)
+    public void setUnitSubsetSize(int unitSubsetSize)
     {
-        SudokuSolver ss = new SudokuSolver();
-        SudokuProblem sp = ss.new SudokuProblem();
-        for (int i = 0; i < N; i++)
-        {
-            for (int j = 0; j < N; j++)
-            {
-                Variable var = vars[i][j];
-                assert(var.getRow() == i);
-                assert(var.getCol() == j);
-                sp.variables[i][j] = ss.new Variable(i, j, var.getValue());
-                Set<Integer> domainClone = new java.util.HashSet<Integer>();
-                for (Integer elem : var.getDomain())
-                {
-                    domainClone.add(new Integer(elem));
-                }
-                sp.variables[i][j].setDomain(domainClone);
-                if (domainClone.size() == 1)
-                {
-                    sp.variables[i][j].setValue(domainClone.iterator().next());
-                }
-            }
-        }
-        makeConnections(sp);
-        return sp;
+        this.unitSubsetSize = unitSubsetSize;
     }
 
+    public int getParallelDepth()
+    {
+        return parallelDepth;
+    }
 
     /**
-     * Takes a sudoku problem full of unconnected variables, 
-     * and creates constraints and arcs for them
-     * and connects everything.
-     * @param sp
+     * @param parallelDepth number of levels of splits at the top of the search
+     * tree whose two halves run as separate fork/join tasks.  Up to
+     * 2^parallelDepth branches can run at once.  0 (the default) searches on
+     * the calling thread.
      */
-    private static void makeConnections(SudokuProblem sp)
+    public void setParallelDepth(int parallelDepth)
     {
-        SudokuSolver ss = new SudokuSolver();
-        // make the constraints for each variable and connect the arcs to constraints and variables
-        int arcId = 0;
-        for (int i = 0; i < N; i++)
-        {
-            for (int j = 0; j < N; j++)
-            {
-                // make each row constraint
-                for (int jj = j+1; jj < N; jj++)
-                {
-                    Constraint c = ss.new Constraint();
-                    Arc a = ss.new Arc(sp.getVariables()[i][j], c, arcId++);
-                    sp.getVariables()[i][j].addArc(a);
-                    c.setArc1(a);
-                    sp.tda.add(a);
-                    a = ss.new Arc(sp.getVariables()[i][jj], c, arcId++);
-                    sp.getVariables()[i][jj].addArc(a);
-                    c.setArc2(a);
-                    sp.tda.add(a);
-                }
-                
-                // make each col constraint
-                for (int ii = i+1; ii < N; ii++)
-                {
-                    Constraint c = ss.new Constraint();
-                    Arc a = ss.new Arc(sp.getVariables()[i][j], c, arcId++);
-                    sp.getVariables()[i][j].addArc(a);
-                    c.setArc1(a);
-                    sp.tda.add(a);
-                    a = ss.new Arc(sp.getVariables()[ii][j], c, arcId++);
-                    sp.getVariables()[ii][j].addArc(a);
-                    c.setArc2(a);
-                    sp.tda.add(a);
-                }
-                // make each block constraint
-                
-                for (int _i = 0; _i < BLOCK_WIDTH - (i % BLOCK_WIDTH); _i++)
-                {
-                    int ii = _i + i;
-                    for (int _j = 0; _j < BLOCK_WIDTH; _j++)
-                    {
-                        int jj = _j +BLOCK_WIDTH*( j/BLOCK_WIDTH);
-                        if (!(i == ii || j == jj) && blockNumber(i,j) < blockNumber(ii, jj)) // we already have these constraints made from before
-                        {
-                            Constraint c = ss.new Constraint();
-                            Arc a;
-                            a = ss.new Arc(sp.getVariables()[i][j], c, arcId++);
-                            sp.getVariables()[i][j].addArc(a);
-                            c.setArc1(a);
-                            sp.tda.add(a);
-                            a = ss.new Arc(sp.getVariables()[ii][jj], c, arcId++);
-                            sp.getVariables()[ii][jj].addArc(a);
-                            c.setArc2(a);
-                            sp.tda.add(a);
-                        }
-                    }
-                }
-            }
-        }
+        this.parallelDepth = parallelDepth;
     }
 
+    public ForkJoinPool getForkJoinPool()
+    {
+        return forkJoinPool != null ? forkJoinPool : ForkJoinPool.commonPool();
+    }
 
     /**
-     * blockNumber is the position within its block that
-     * the variable is in.  For example, variables[0][0]
-     * would have blockNumber 0.  variables[2][2] would have
-     * blockNumber 8.
-     * 
-     * eg   0 1 2   3 4 5   6 7 8
-     * 
-     *  0   0 1 2   0 1 2   0 1 2
-     *  1   3 4 5   3 4 5   3 4 5
-     *  2   6 7 8   6 7 8   6 7 8
-     *  
-     *  3   0 1 2   0 1 2   0 1 2
-     *  4   3 4 5   3 4 5   3 4 5
-     *  5   6 7 8   6 7 8   6 7 8
-     *  
-     *  6   0 1 2   0 1 2   0 1 2
-     *  7   3 4 5   3 4 5   3 4 5
-     *  8   6 7 8   6 7 8   6 7 8
-     */
-    private static int blockNumber(int i, int j)
-    {
-        return BLOCK_WIDTH * (i % BLOCK_WIDTH) + j % BLOCK_WIDTH;
+     * @param forkJoinPool the pool parallel searches run in, or null
+     * (the default) for the common pool
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool)
+    {
+        this.forkJoinPool = forkJoinPool;
     }
-	
-	class SudokuProblem
-	{
-	    private Variable[][] variables;
-	    /**
-	     * To do arc list: arcs that might be
-	     * inconsistent
-	     */
-	    private Set<Arc> tda;
-	    
 
-	    private final static int N = 9; // size of a sudoku board
-	    private final static int BLOCK_WIDTH = 3;
-	    
-	    
-	    
-	    public SudokuProblem()
-	    {
-	        variables = new Variable[N][];
-	        for (int i = 0; i < N; i++)
-	        {
-	            variables[i] = new Variable[N];
-	        }
-	        tda = new java.util.HashSet<Arc>();
-	    }
-	    
-	    
-	    
-	    
+    public boolean isCheckUniqueness()
+    {
+        return checkUniqueness;
+    }
+
+    /**
+     * @param checkUniqueness if true, solve keeps searching after the first
+     * solution and throws InvalidSudokuBoardException when it finds a second
+     * one.  Off by default.  The search is then always sequential.
+     */
+    public void setCheckUniqueness(boolean checkUniqueness)
+    {
+        this.checkUniqueness = checkUniqueness;
+    }
+
+    public Branching getBranching()
+    {
+        return branching;
+    }
+
+    /**
+     * @param branching how the search splits a domain, HALVING by default
+     */
+    public void setBranching(Branching branching)
+    {
+        this.branching = branching;
+    }
+
+    public ValueOrder getValueOrder()
+    {
+        return valueOrder;
+    }
+
+    /**
+     * @param valueOrder which half of a domain, or with ASSIGNMENT
+     * branching which value, the search tries first.  LOWEST_FIRST by
+     * default, which means the least constraining value with ASSIGNMENT.
+     */
+    public void setValueOrder(ValueOrder valueOrder)
+    {
+        this.valueOrder = valueOrder;
+    }
+
+    public long getRandomSeed()
+    {
+        return randomSeed;
+    }
+
+    /**
+     * @param randomSeed seeds the RANDOM value order.  Every solve starts
+     * from this seed, so a sequential solve of a board always takes the
+     * same path.  0 by default.
+     */
+    public void setRandomSeed(long randomSeed)
+    {
+        this.randomSeed = randomSeed;
+    }
+
+    public Restarts getRestarts()
+    {
+        return restarts;
+    }
+
+    /**
+     * @param restarts the restart schedule of the search, NONE by default.
+     * Only a sequential search without the uniqueness check restarts.
+     */
+    public void setRestarts(Restarts restarts)
+    {
+        this.restarts = restarts;
+    }
+
+    public int getRestartBase()
+    {
+        return restartBase;
+    }
 
+    /**
+     * @param restartBase dead ends allowed in a run of length 1 of the
+     * restart schedule, 32 by default
+     */
+    public void setRestartBase(int restartBase)
+    {
+        this.restartBase = restartBase;
+    }
+
+    public boolean isBackjumping()
+    {
+        return backjumping;
+    }
+
+    /**
+     * @param backjumping if true, the search keeps track of the decisions
+     * that led to each pruning, and when a branch fails it jumps back over
+     * the decisions that had no part in the failure instead of trying
+     * their other halves.  Every failed first branch also becomes a nogood
+     * that is propagated for the rest of the search.  Off by default.  Only
+     * a sequential search without the uniqueness check backjumps.
+     */
+    public void setBackjumping(boolean backjumping)
+    {
+        this.backjumping = backjumping;
+    }
+
+    public int getNogoodCapacity()
+    {
+        return nogoodCapacity;
+    }
+
+    /**
+     * @param nogoodCapacity the most nogoods a backjumping search keeps,
+     * 256 by default; 0 backjumps without learning nogoods
+     */
+    public void setNogoodCapacity(int nogoodCapacity)
+    {
+        this.nogoodCapacity = nogoodCapacity;
+    }
+
+    /**
+     * Solves a board like solve, and also reports how much work the search
+     * did.  This always uses the arc consistency engine, whose search the
+     * counters describe; plain solve does not pay for the counting.
+     * 
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @return the solved board with the counters of the search
+     * @throws InvalidSudokuBoardException if the board has no solution
+     */
+    public SolveResult solveWithStatistics(int[][] board) throws InvalidSudokuBoardException
+    {
+        return solveWithin(board, false, 0, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Solves a board like solveWithStatistics, but gives up once a
+     * timeout has passed.
+     * 
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @param timeout how long the solve may take
+     * @param unit
+     * @return the solved board with the counters of the search, or a
+     * DEADLINE_EXCEEDED outcome with the counters up to that point
+     * @throws InvalidSudokuBoardException if the board has no solution
+     */
+    public SolveResult solve(int[][] board, long timeout, TimeUnit unit) throws InvalidSudokuBoardException
+    {
+        return solveWithin(board, true, System.nanoTime() + unit.toNanos(timeout), Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Solves a board like solveWithStatistics, but gives up after visiting
+     * a number of search nodes.  With a parallel search the limit applies
+     * to each branch searched in parallel.
+     * 
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @param maxNodes the most nodes of the search tree to visit
+     * @return the solved board with the counters of the search, or a
+     * NODE_LIMIT_EXCEEDED outcome with the counters up to that point
+     * @throws InvalidSudokuBoardException if the board has no solution
+     */
+    public SolveResult solve(int[][] board, long maxNodes) throws InvalidSudokuBoardException
+    {
+        return solveWithin(board, false, 0, maxNodes, null);
+    }
+
+    /**
+     * Solves a board like solveWithStatistics, but gives up once the
+     * token is cancelled from another thread.
+     * 
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @param token
+     * @return the solved board with the counters of the search, or a
+     * CANCELLED outcome with the counters up to that point
+     * @throws InvalidSudokuBoardException if the board has no solution
+     */
+    public SolveResult solve(int[][] board, CancellationToken token) throws InvalidSudokuBoardException
+    {
+        return solveWithin(board, false, 0, Long.MAX_VALUE, token);
+    }
+
+    /**
+     * Solves a board with the arc consistency search, keeping statistics,
+     * within the given limits.
+     */
+    private SolveResult solveWithin(int[][] board, boolean hasDeadline, long deadline, long maxNodes,
+            CancellationToken token) throws InvalidSudokuBoardException
+    {
+        SudokuProblem sp = problemWithBoard(board);
+        sp.statistics = true;
+        sp.hasDeadline = hasDeadline;
+        sp.deadline = deadline;
+        sp.nodeLimit = maxNodes;
+        sp.token = token;
+        int[][] solution = sp.search() ? domainsToBoard(sp.domains) : null;
+        return new SolveResult(solution == null ? sp.exceeded : SolveResult.Outcome.SOLVED, solution,
+                sp.nodeCount, sp.revisionCount, sp.pruneCount, sp.splitCount, sp.maxDepth, sp.deadEndCount,
+                sp.restartCount);
+    }
+
+    /**
+     * Counts the solutions of a board, stopping as soon as limit are found.
+     * 
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @param limit the most solutions to look for, for example 2 to tell a
+     * unique board from an ambiguous one
+     * @return the number of solutions, at most limit; 0 without searching
+     * if limit is not positive
+     */
+    public int countSolutions(int[][] board, int limit)
+    {
+        if (limit <= 0)
+        {
+            return 0;
+        }
+        return problemWithBoard(board).countSolutions(limit);
+    }
+
+    /**
+     * @param board the 2d int array representing the Sudoku board. Zeros indicate unfilled cells.
+     * @return true if the board has exactly one solution
+     */
+    public boolean hasUniqueSolution(int[][] board)
+    {
+        return countSolutions(board, 2) == 1;
+    }
+
+    /**
+     * @param i from 1
+     * @return the i-th term of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     */
+    static long luby(long i)
+    {
+        while (true)
+        {
+            // the smallest k with i <= 2^k - 1
+            int k = 64 - Long.numberOfLeadingZeros(i);
+            if (i == (1L << k) - 1)
+            {
+                return 1L << (k - 1);
+            }
+            i -= (1L << (k - 1)) - 1;
+        }
+    }
+
+    /**
+     * Converts domains into a board.  Cells whose domain does not
+     * hold exactly one value are left as 0.
+     * @param domains
+     * @return
+     */
+    public static int[][] domainsToBoard(long[] domains) {
+        int n = (int) Math.round(Math.sqrt(domains.length));
+        int[][] board = new int[n][];
+        for (int i = 0; i < n; i++) {
+            board[i] = new int[n];
+            for (int j = 0; j < n; j++) {
+                long domain = domains[i * n + j];
+                board[i][j] = isSingleton(domain) ? lowestValue(domain) : 0;
+            }
+        }
+        return board;
+    
+    }
+    /**
+     * Solves a sudoku problem in place.  Each branch of a split is explored
+     * on the same problem and undone through its trail on backtrack.
+     * @param sp
+     * @param depth number of splits above this node
+     * @return true if sp now holds a solution, false if it is infeasible
+     */
+    private static boolean solve(SudokuProblem sp, int depth)
+    {
+        if (sp.isStopped())
+        {
+            return false;
+        }
+        sp.nodeCount++;
+        sp.reachDepth(depth);
+        sp.makeConsistent();
+        if (sp.isSolved())
+        {
+            return true;
+        }
+        if (sp.isInfeasible())
+        {
+            sp.countDeadEnd();
+            return false;
+        }
+        int cell = sp.chooseVariableToSplit();
+        int mark = sp.getTrailSize();
+        long otherHalf = sp.splitOn(cell);
+        if (solve(sp, depth + 1))
+        {
+            return true;
+        }
+        sp.undoTo(mark);
+        sp.restrictDomain(cell, otherHalf);
+        return solve(sp, depth + 1);
+    }
+
+    /**
+     * Solves a sudoku problem in place like solve, with conflict-directed
+     * backjumping.  Decision level d is the split made at depth d, and
+     * every value removed from a domain carries the set of levels that led
+     * to its removal.  When a subtree fails, sp.conflict is left holding
+     * the levels that explain the failure.  If the first branch of a split
+     * failed without its decision in that set, the other branch would fail
+     * the same way, so it is skipped and the failure is passed up.
+     * Otherwise the first branch becomes a nogood, and the values of the
+     * first half are removed in the second branch for the reasons of the
+     * first branch's failure.
+     * @param sp
+     * @param depth number of splits above this node
+     * @return true if sp now holds a solution, false if it is infeasible
+     * or the search was stopped
+     */
+    private static boolean solveBackjumping(SudokuProblem sp, int depth)
+    {
+        if (sp.isStopped())
+        {
+            return false;
+        }
+        sp.nodeCount++;
+        sp.reachDepth(depth);
+        sp.makeConsistent();
+        if (sp.isSolved())
+        {
+            return true;
+        }
+        if (sp.isInfeasible())
+        {
+            sp.countDeadEnd();
+            sp.conflict = sp.explainFailure();
+            return false;
+        }
+        int cell = sp.chooseVariableToSplit();
+        int mark = sp.getTrailSize();
+        long level = levelBit(depth);
+        long otherHalf = sp.splitOn(cell);
+        long firstHalf = sp.domains[cell];
+        sp.explainRemoval(cell, otherHalf, level);
+        sp.decide(depth, cell, firstHalf);
+        if (solveBackjumping(sp, depth + 1))
+        {
+            return true;
+        }
+        sp.undoTo(mark);
+        if (sp.isStopped())
+        {
+            return false;
+        }
+        long conflict = sp.conflict;
+        if ((conflict & level) == 0)
+        {
+            return false;
+        }
+        sp.learn(conflict);
+        // the levels above are known to fail together with this decision
+        long reason = depth < 63 ? conflict & ~level : conflict;
+        sp.restrictDomain(cell, otherHalf);
+        sp.explainRemoval(cell, firstHalf, reason);
+        if (solveBackjumping(sp, depth + 1))
+        {
+            return true;
+        }
+        if (depth < 63)
+        {
+            sp.conflict &= ~level;
+        }
+        return false;
+    }
+
+    /**
+     * @return the bit of a decision level in a set of levels.  Levels
+     * from 63 on share the top bit, which is never taken out of a set, so
+     * the search does not jump over them.
+     */
+    private static long levelBit(int depth)
+    {
+        return 1L << Math.min(depth, 63);
+    }
+
+    /**
+     * Searches a sudoku problem like solve, but keeps going after a
+     * solution until limit solutions have been counted.  The first
+     * solution is kept in sp.firstSolution.
+     * @param sp
+     * @param limit
+     * @param depth number of splits above this node
+     */
+    private static void countSolutions(SudokuProblem sp, int limit, int depth)
+    {
+        if (sp.isStopped())
+        {
+            return;
+        }
+        sp.nodeCount++;
+        sp.reachDepth(depth);
+        sp.makeConsistent();
+        if (sp.isSolved())
+        {
+            if (sp.solutionCount++ == 0)
+            {
+                sp.firstSolution = sp.domains.clone();
+            }
+            return;
+        }
+        if (sp.isInfeasible())
+        {
+            sp.countDeadEnd();
+            return;
+        }
+        int cell = sp.chooseVariableToSplit();
+        int mark = sp.getTrailSize();
+        long otherHalf = sp.splitOn(cell);
+        countSolutions(sp, limit, depth + 1);
+        sp.undoTo(mark);
+        if (sp.solutionCount >= limit)
+        {
+            return;
+        }
+        sp.restrictDomain(cell, otherHalf);
+        countSolutions(sp, limit, depth + 1);
+    }
+	/**
+     * Creates a new sudoku problem with the given board
+     * A 0 should be used to denote an empty space
+     * @param board
+     * @return
+     * @pre  board must be square with a side of k * k for a k from 1 to 8
+     */
+    public static SudokuProblem sudokuProblemWithBoard(int[][] board)
+    {
+        return new SudokuSolver().problemWithBoard(board);
+    }
+    
+    /**
+     * Creates a new sudoku problem with the given board that
+     * is solved with the settings of this solver.
+     * @param board
+     * @return
+     * @throws IllegalArgumentException if the size of the board is not supported
+     * @pre  board must be square with a side of k * k for a k from 1 to 8
+     */
+    public SudokuProblem problemWithBoard(int[][] board)
+    {
+        int n = board.length;
+        SudokuProblem sp = new SudokuProblem(grid(n));
+        // Initialize all the domains
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                sp.domains[i * n + j] = 0 == board[i][j] ? sp.grid.allValues : valueBit(board[i][j]);
+            }
+        }
+        for (int cell = 0; cell < n * n; cell++)
+        {
+            sp.queueChangedCell(cell);
+        }
+        
+        return sp;
+    }
+
+
+    /**
+     * @param n number of rows and columns of the board
+     * @return the shared constraint graph for boards of that size
+     * @throws IllegalArgumentException if n is not the square of a
+     * block width from 1 to MAX_BLOCK_WIDTH
+     */
+    private static Grid grid(int n)
+    {
+        int blockWidth = (int) Math.round(Math.sqrt(n));
+        if (blockWidth * blockWidth != n || blockWidth < 1 || blockWidth > MAX_BLOCK_WIDTH)
+        {
+            throw new IllegalArgumentException("Unsupported board size " + n);
+        }
+        Grid grid = GRIDS.get(blockWidth);
+        if (grid == null)
+        {
+            // two threads may both build it; either copy will do
+            GRIDS.compareAndSet(blockWidth, null, new Grid(blockWidth));
+            grid = GRIDS.get(blockWidth);
+        }
+        return grid;
+    }
+
+    /**
+     * @return the domain bitmask holding only the given digit
+     */
+    private static long valueBit(int value)
+    {
+        return 1L << (value - 1);
+    }
+    
+    /**
+     * @return the smallest digit in a non-empty domain bitmask
+     */
+    private static int lowestValue(long domain)
+    {
+        return Long.numberOfTrailingZeros(domain) + 1;
+    }
+    
+    private static boolean isSingleton(long domain)
+    {
+        return domain != 0 && (domain & (domain - 1)) == 0;
+    }
+    
+    /**
+     * Works out which values of one domain have no support in the other
+     * under the constraint that the two cells must differ.
+     * @param domainToPrune
+     * @param domainToCheck
+     * @return bitmask of the values to remove from domainToPrune
+     */
+    private static long pruneDomain(long domainToPrune, long domainToCheck)
+    {
+        // A value x has support in the other domain as long as that domain
+        // holds some value other than x, so only an empty or singleton
+        // domain can prune anything.
+        if (domainToCheck == 0)
+        {
+            return domainToPrune;
+        }
+        if (isSingleton(domainToCheck))
+        {
+            return domainToPrune & domainToCheck;
+        }
+        return 0;
+    }
+	
+	class SudokuProblem
+	{
+	    /**
+	     * Bitmask domain of every cell: bit (d - 1) is set
+	     * when digit d is still possible.
+	     */
+	    private long[] domains;
+	    /**
+	     * The constraint graph of the board size, with its
+	     * tables copied into fields for quicker access.
+	     */
+	    private final Grid grid;
+	    private final int n;
+	    private final int cells;
+	    private final int peerCount;
+	    private final int[][] peers;
+	    private final int[] reverseArc;
+	    private final int[][] units;
+	    /**
+	     * To do arc list: arcs that might be
+	     * inconsistent.  Only has room for them
+	     * with ARC_CONSISTENCY propagation.
+	     */
+	    private WorkQueue tda;
+	    /**
+	     * Cells that became assigned and have not yet
+	     * removed their value from their peers
+	     */
+	    private WorkQueue events;
+	    private final Propagation propagation;
+	    private final Branching branching;
+	    private final int unitSubsetSize;
+	    /**
+	     * Set when propagation finds a contradiction that does not
+	     * show as an empty domain, such as a digit with no place left
+	     * in a unit.  Cleared by undoTo.
+	     */
+	    private boolean failed;
+	    /**
+	     * Scratch space for the unit propagation: positions[d] is the
+	     * bitmask of the unit members that can still hold digit d + 1.
+	     */
+	    private long[] positions;
+	    /**
+	     * Scratch space for ASSIGNMENT branching: valueCounts[d] is the
+	     * number of peers that can still hold digit d + 1.
+	     */
+	    private int[] valueCounts;
+	    private final int parallelDepth;
+	    /**
+	     * Raised by the first branch of a parallel search to find a
+	     * solution; null when the search is sequential.
+	     */
+	    private AtomicBoolean stop;
+	    private final boolean checkUniqueness;
+	    /**
+	     * Solutions counted so far by countSolutions, and the
+	     * domains of the first one.
+	     */
+	    private int solutionCount;
+	    private long[] firstSolution;
+	    /**
+	     * Undo log of domain changes: the cell and the domain
+	     * it had before the change, most recent last.
+	     */
+	    private int[] trailCells;
+	    private long[] trailDomains;
+	    private int trailSize;
+	    /**
+	     * Number of nodes of the search tree visited so far.
+	     */
+	    private long nodeCount;
+	    /**
+	     * Number of arc revisions (or peer checks for
+	     * SINGLETON_EVENTS) done so far.
+	     */
+	    private long revisionCount;
+	    /**
+	     * When set, the search also keeps the counters below.  Off
+	     * unless the problem is solved by solveWithStatistics.
+	     */
+	    private boolean statistics;
+	    /**
+	     * Number of values removed from domains by propagation.
+	     */
+	    private long pruneCount;
+	    private long splitCount;
+	    private int maxDepth;
+	    /**
+	     * Number of search nodes found to be infeasible.
+	     */
+	    private long deadEndCount;
+	    /**
+	     * Limits of a bounded solve: the System.nanoTime by which it must
+	     * end if hasDeadline is set, the most search nodes, and a token
+	     * that can cancel it.  A plain solve has none of them.
+	     */
+	    private boolean hasDeadline;
+	    private long deadline;
+	    private long nodeLimit = Long.MAX_VALUE;
+	    private CancellationToken token;
+	    /**
+	     * The limit that stopped the search, or null.
+	     */
+	    private SolveResult.Outcome exceeded;
+	    /**
+	     * Draws the halves of splits with RANDOM value order, else null.
+	     */
+	    private Random random;
+	    /**
+	     * Weight of every unit for DOM_WDEG, else null.  A unit gains
+	     * one for each dead end it is blamed for.
+	     */
+	    private int[] unitWeights;
+	    /**
+	     * The unit in which the unit propagation found a digit with no
+	     * place left, or -1.  Cleared by undoTo.
+	     */
+	    private int failedUnit = -1;
+	    /**
+	     * Restart state: dead ends in the current run, the dead ends after
+	     * which it ends, and whether it has ended.  The limit stays at
+	     * Long.MAX_VALUE unless the search restarts.
+	     */
+	    private long runDeadEnds;
+	    private long runDeadEndLimit = Long.MAX_VALUE;
+	    private boolean restarting;
+	    private long restartCount;
+	    /**
+	     * Explanations of a backjumping search, else null.
+	     * reasons[cell * n + d] is the set of decision levels, one bit
+	     * each, that led to digit d + 1 being removed from the cell.
+	     * They are not trailed: a value is only asked about while it
+	     * is removed, and it was removed on the current path.
+	     */
+	    private long[] reasons;
+	    /**
+	     * The levels that explain a contradiction set by failed
+	     * without an empty domain.  Cleared by undoTo.
+	     */
+	    private long failureReason;
+	    /**
+	     * The levels that explain why the subtree searched last failed.
+	     */
+	    private long conflict;
+	    /**
+	     * The decision of every level on the current path: the cell
+	     * split and the half it kept in the first branch.
+	     */
+	    private int[] pathCells;
+	    private long[] pathDomains;
+	    /**
+	     * Nogoods learned by a backjumping search, else null.
+	     */
+	    private NogoodStore nogoods;
+	    /**
+	     * Scratch space for the literals of a nogood being learned.
+	     */
+	    private int[] nogoodCells;
+	    private long[] nogoodDomains;
+	    
+	    
+	    
+	    /**
+	     * @param grid the constraint graph of the board size
+	     */
+	    public SudokuProblem(Grid grid)
+	    {
+	        this.grid = grid;
+	        n = grid.n;
+	        cells = grid.cells;
+	        peerCount = grid.peerCount;
+	        peers = grid.peers;
+	        reverseArc = grid.reverseArc;
+	        units = grid.units;
+	        domains = new long[cells];
+	        events = new WorkQueue(cells);
+	        propagation = SudokuSolver.this.propagation;
+	        branching = SudokuSolver.this.branching;
+	        tda = new WorkQueue(propagation == Propagation.ARC_CONSISTENCY ? cells * peerCount : 0);
+	        unitSubsetSize = SudokuSolver.this.unitSubsetSize;
+	        positions = new long[n];
+	        valueCounts = new int[n];
+	        parallelDepth = SudokuSolver.this.parallelDepth;
+	        checkUniqueness = SudokuSolver.this.checkUniqueness;
+	        if (valueOrder == ValueOrder.RANDOM)
+	        {
+	            random = new Random(randomSeed);
+	        }
+	        if (variableOrdering == DOM_WDEG)
+	        {
+	            unitWeights = new int[units.length];
+	            java.util.Arrays.fill(unitWeights, 1);
+	        }
+	        trailCells = new int[cells];
+	        trailDomains = new long[cells];
+	        trailSize = 0;
+	    }
+	    
+	    /**
+	     * Creates a problem with the same domains and settings as
+	     * another one, but an empty trail.
+	     * @param other a problem with nothing left to propagate
+	     */
+	    private SudokuProblem(SudokuProblem other)
+	    {
+	        grid = other.grid;
+	        n = grid.n;
+	        cells = grid.cells;
+	        peerCount = grid.peerCount;
+	        peers = grid.peers;
+	        reverseArc = grid.reverseArc;
+	        units = grid.units;
+	        domains = other.domains.clone();
+	        events = new WorkQueue(cells);
+	        propagation = other.propagation;
+	        branching = other.branching;
+	        tda = new WorkQueue(other.tda.capacity());
+	        unitSubsetSize = other.unitSubsetSize;
+	        positions = new long[n];
+	        valueCounts = new int[n];
+	        parallelDepth = other.parallelDepth;
+	        checkUniqueness = other.checkUniqueness;
+	        stop = other.stop;
+	        statistics = other.statistics;
+	        hasDeadline = other.hasDeadline;
+	        deadline = other.deadline;
+	        nodeLimit = other.nodeLimit;
+	        token = other.token;
+	        if (other.random != null)
+	        {
+	            random = new Random(other.random.nextLong());
+	        }
+	        if (other.unitWeights != null)
+	        {
+	            unitWeights = other.unitWeights.clone();
+	        }
+	        trailCells = new int[cells];
+	        trailDomains = new long[cells];
+	        trailSize = 0;
+	    }
+	    
+	    /**
+	     * @return a copy of this problem that can be searched independently
+	     * @pre nothing is left to propagate
+	     */
+	    private SudokuProblem copy()
+	    {
+	        return new SudokuProblem(this);
+	    }
+	    
+	    
+	    
+	    
+
+
+	    /**
+	     * Checks every element in the arc's cell's domain
+	     * and eliminates any that are inconsistent.
+	     * If any are eliminated, it adds the proper arcs
+	     * back into the arc to do list.
+	     * @param arc
+	     */
+	    private void checkArc(int arc) {
+	        revisionCount++;
+	        int cell = arc / peerCount;
+	        int peer = peers[cell][arc % peerCount];
+	        long elementsToPrune = pruneDomain(domains[cell], domains[peer]);
+	        if (elementsToPrune != 0)
+	        {
+	            if (statistics)
+	            {
+	                pruneCount += Long.bitCount(elementsToPrune);
+	            }
+	            if (reasons != null)
+	            {
+	                explainRemoval(cell, elementsToPrune, explain(peer));
+	            }
+	            saveDomain(cell);
+	            domains[cell] &= ~elementsToPrune;
+	            addArcsToTDA(cell, arc);
+	        }
+	    }
+	    
+	    /**
+	     * Adds the arcs pointing at this cell back into the TDA.
+	     * These are the arcs of every constraint on the cell
+	     * other than the one that was just checked.
+	     * @param cell
+	     * @param arcToIgnore
+	     */
+	    private void addArcsToTDA(int cell, int arcToIgnore) {
+	        for (int k = 0; k < peerCount; k++)
+	        {
+	            int a = cell * peerCount + k;
+	            if (a != arcToIgnore)
+	            {
+	                tda.add(reverseArc[a]);
+	            }
+	        }
+	    }
+	    
+	    /**
+	     * Queues whatever the propagation mode needs to look at
+	     * after the domain of a cell was narrowed from outside.
+	     * @param cell
+	     */
+	    private void queueChangedCell(int cell) {
+	        if (propagation == Propagation.SINGLETON_EVENTS)
+	        {
+	            if (isSingleton(domains[cell]))
+	            {
+	                events.add(cell);
+	            }
+	        }
+	        else
+	        {
+	            addArcsToTDA(cell, -1);
+	        }
+	    }
+	    
+	    /**
+	     * Removes the value of an assigned cell from the domains of its
+	     * peers, posting an event for every peer that becomes assigned.
+	     * @param cell
+	     * @return false if some domain became empty
+	     */
+	    private boolean propagateAssignment(int cell) {
+	        long value = domains[cell];
+	        if (value == 0)
+	        {
+	            return false;
+	        }
+	        long reason = reasons != null ? explain(cell) : 0;
+	        for (int peer : peers[cell])
+	        {
+	            revisionCount++;
+	            if ((domains[peer] & value) != 0)
+	            {
+	                if (statistics)
+	                {
+	                    pruneCount++;
+	                }
+	                if (reasons != null)
+	                {
+	                    explainRemoval(peer, value, reason);
+	                }
+	                saveDomain(peer);
+	                domains[peer] &= ~value;
+	                if (domains[peer] == 0)
+	                {
+	                    return false;
+	                }
+	                if (isSingleton(domains[peer]))
+	                {
+	                    events.add(peer);
+	                }
+	            }
+	        }
+	        return true;
+	    }
+	    
+	    /**
+	     * Goes through every arc on the TDA and checks it, or with
+	     * SINGLETON_EVENTS handles every pending assignment.
+	     */
+	    private void makeArcConsistent()
+	    {
+	        if (propagation == Propagation.SINGLETON_EVENTS)
+	        {
+	            while (!events.isEmpty())
+	            {
+	                if (!propagateAssignment(events.poll()))
+	                {
+	                    failed = true;
+	                    events.clear();
+	                }
+	            }
+	            return;
+	        }
+	        while (!tda.isEmpty())
+	        {
+	            checkArc(tda.poll());
+	        }
+	    }
+	    
+	    /**
+	     * Makes the problem arc consistent, then alternates with the
+	     * all-different unit propagation and the learned nogoods until
+	     * none changes anything.  A bounded solve that runs out of budget
+	     * skips the rest, which leaves the problem arc consistent.
+	     */
+	    public void makeConsistent()
+	    {
+	        makeArcConsistent();
+	        while ((unitSubsetSize > 0 || nogoods != null) && !isInfeasible() && !isOverBudget()
+	                && (unitSubsetSize > 0 && propagateUnits() || nogoods != null && propagateNogoods()))
+	        {
+	            makeArcConsistent();
+	        }
+	    }
+	    
+	    /**
+	     * Looks at each row, column and block as a whole: first for hidden
+	     * singles, then for naked and hidden subsets of growing size.
+	     * Stops at the first size that changes a domain so that the cheaper
+	     * arc consistency can run again before anything bigger is tried.
+	     * @return true if some domain was narrowed
+	     */
+	    private boolean propagateUnits()
+	    {
+	        for (int k = 1; k <= unitSubsetSize; k++)
+	        {
+	            boolean changed = false;
+	            for (int u = 0; u < units.length; u++)
+	            {
+	                int[] unit = units[u];
+	                if (k > 1)
+	                {
+	                    changed |= nakedSubsets(unit, k, 0, 0, 0, 0);
+	                }
+	                if (!failed)
+	                {
+	                    findPositions(unit);
+	                }
+	                if (!failed)
+	                {
+	                    changed |= hiddenSubsets(unit, k, 0, 0, 0, 0);
+	                }
+	                if (failed)
+	                {
+	                    failedUnit = u;
+	                    return true;
+	                }
+	            }
+	            if (changed)
+	            {
+	                return true;
+	            }
+	        }
+	        return false;
+	    }
+	    
+	    /**
+	     * Fills in positions for a unit.  A digit with no position
+	     * left makes the problem infeasible.
+	     * @param unit
+	     */
+	    private void findPositions(int[] unit)
+	    {
+	        java.util.Arrays.fill(positions, 0);
+	        for (int i = 0; i < n; i++)
+	        {
+	            for (long rest = domains[unit[i]]; rest != 0; rest &= rest - 1)
+	            {
+	                positions[Long.numberOfTrailingZeros(rest)] |= 1L << i;
+	            }
+	        }
+	        for (int d = 0; d < n; d++)
+	        {
+	            if (positions[d] == 0)
+	            {
+	                failed = true;
+	                if (reasons != null)
+	                {
+	                    for (int cell : unit)
+	                    {
+	                        failureReason |= reasons[cell * n + d];
+	                    }
+	                }
+	            }
+	        }
+	    }
+	    
+	    /**
+	     * Finds sets of k undecided cells of a unit whose domains hold only
+	     * k values between them, and removes those values from the other
+	     * cells of the unit.  Called recursively, adding one cell at a time.
+	     * @param unit
+	     * @param k size of the subset
+	     * @param start first unit index that may still be added
+	     * @param depth number of cells chosen so far
+	     * @param members bitmask of the unit indices chosen so far
+	     * @param union union of the domains of the chosen cells
+	     * @return true if some domain was narrowed
+	     */
+	    private boolean nakedSubsets(int[] unit, int k, int start, int depth, long members, long union)
+	    {
+	        if (depth == k)
+	        {
+	            if (Long.bitCount(union) != k)
+	            {
+	                return false;
+	            }
+	            long reason = 0;
+	            if (reasons != null)
+	            {
+	                for (long rest = members; rest != 0; rest &= rest - 1)
+	                {
+	                    reason |= explainMissing(unit[Long.numberOfTrailingZeros(rest)], ~union);
+	                }
+	            }
+	            boolean changed = false;
+	            for (int i = 0; i < n; i++)
+	            {
+	                if ((members & (1L << i)) == 0)
+	                {
+	                    changed |= restrict(unit[i], ~union, reason);
+	                }
+	            }
+	            return changed;
+	        }
+	        boolean changed = false;
+	        for (int i = start; i < n && !failed; i++)
+	        {
+	            long domain = domains[unit[i]];
+	            int size = Long.bitCount(domain);
+	            if (size < 2 || Long.bitCount(union | domain) > k)
+	            {
+	                continue;
+	            }
+	            changed |= nakedSubsets(unit, k, i + 1, depth + 1, members | (1L << i), union | domain);
+	        }
+	        return changed;
+	    }
+	    
+	    /**
+	     * Finds sets of k digits that fit in only k cells of a unit between
+	     * them, and removes every other value from those cells.  A hidden
+	     * single is the case k = 1.  Called recursively, adding one digit
+	     * at a time.
+	     * @param unit
+	     * @param k size of the subset
+	     * @param start first digit index that may still be added
+	     * @param depth number of digits chosen so far
+	     * @param digits domain bitmask of the digits chosen so far
+	     * @param cells bitmask of the unit indices that can hold them
+	     * @return true if some domain was narrowed
+	     * @pre findPositions has been run on the unit
+	     */
+	    private boolean hiddenSubsets(int[] unit, int k, int start, int depth, long digits, long cells)
+	    {
+	        if (depth == k)
+	        {
+	            if (Long.bitCount(cells) != k)
+	            {
+	                return false;
+	            }
+	            long reason = 0;
+	            if (reasons != null)
+	            {
+	                // the digits were removed from the rest of the unit
+	                for (int i = 0; i < n; i++)
+	                {
+	                    if ((cells & (1L << i)) == 0)
+	                    {
+	                        for (long rest = digits; rest != 0; rest &= rest - 1)
+	                        {
+	                            reason |= reasons[unit[i] * n + Long.numberOfTrailingZeros(rest)];
+	                        }
+	                    }
+	                }
+	            }
+	            boolean changed = false;
+	            for (int i = 0; i < n; i++)
+	            {
+	                if ((cells & (1L << i)) != 0)
+	                {
+	                    changed |= restrict(unit[i], digits, reason);
+	                }
+	            }
+	            return changed;
+	        }
+	        boolean changed = false;
+	        for (int d = start; d < n && !failed; d++)
+	        {
+	            int count = Long.bitCount(positions[d]);
+	            // a digit already placed in the unit has nothing left to tell
+	            if (count == 1 && isSingleton(domains[unit[Long.numberOfTrailingZeros(positions[d])]])
+	                    || Long.bitCount(cells | positions[d]) > k)
+	            {
+	                continue;
+	            }
+	            changed |= hiddenSubsets(unit, k, d + 1, depth + 1, digits | (1L << d), cells | positions[d]);
+	        }
+	        return changed;
+	    }
+	    
+	    /**
+	     * Narrows the domain of a cell to the given values and
+	     * queues the change for propagation.
+	     * @param cell
+	     * @param keep bitmask of the values that may stay
+	     * @param reason the levels that explain the removal, if explained
+	     * @return true if the domain changed
+	     */
+	    private boolean restrict(int cell, long keep, long reason)
+	    {
+	        if ((domains[cell] & ~keep) == 0)
+	        {
+	            return false;
+	        }
+	        if (statistics)
+	        {
+	            pruneCount += Long.bitCount(domains[cell] & ~keep);
+	        }
+	        if (reasons != null)
+	        {
+	            explainRemoval(cell, domains[cell] & ~keep, reason);
+	        }
+	        saveDomain(cell);
+	        domains[cell] &= keep;
+	        if (domains[cell] == 0)
+	        {
+	            failed = true;
+	        }
+	        queueChangedCell(cell);
+	        return true;
+	    }
+	    
+	    /**
+	     * Checks every nogood against the domains.  A literal holds once
+	     * the domain of its cell is within the literal's values.  If all
+	     * of them hold the problem is infeasible, and if all but one hold
+	     * the values of that one are removed from its cell.
+	     * @return true if some domain was narrowed or a nogood failed
+	     */
+	    private boolean propagateNogoods()
+	    {
+	        boolean changed = false;
+	        for (int i = 0; i < nogoods.size() && !failed; i++)
+	        {
+	            int[] literalCells = nogoods.cells(i);
+	            long[] literalDomains = nogoods.domains(i);
+	            int open = -1;
+	            for (int j = 0; j < literalCells.length; j++)
+	            {
+	                long domain = domains[literalCells[j]];
+	                if ((domain & literalDomains[j]) == 0)
+	                {
+	                    // this literal can no longer hold
+	                    open = -2;
+	                    break;
+	                }
+	                if ((domain & ~literalDomains[j]) != 0)
+	                {
+	                    if (open != -1)
+	                    {
+	                        open = -2;
+	                        break;
+	                    }
+	                    open = j;
+	                }
+	            }
+	            if (open == -2)
+	            {
+	                continue;
+	            }
+	            long reason = 0;
+	            for (int j = 0; j < literalCells.length; j++)
+	            {
+	                if (j != open)
+	                {
+	                    reason |= explainMissing(literalCells[j], ~literalDomains[j]);
+	                }
+	            }
+	            nogoods.touch(i);
+	            if (open == -1)
+	            {
+	                failed = true;
+	                failureReason |= reason;
+	            }
+	            else
+	            {
+	                restrict(literalCells[open], ~literalDomains[open], reason);
+	            }
+	            changed = true;
+	        }
+	        return changed;
+	    }
+	    
+	    /**
+	     * Records why values were removed from a cell.
+	     * @param cell
+	     * @param removed bitmask of the values
+	     * @param reason the levels that led to the removal
+	     */
+	    private void explainRemoval(int cell, long removed, long reason)
+	    {
+	        for (long rest = removed; rest != 0; rest &= rest - 1)
+	        {
+	            reasons[cell * n + Long.numberOfTrailingZeros(rest)] = reason;
+	        }
+	    }
+	    
+	    /**
+	     * @return the levels that explain why none of the given values
+	     * is left in the domain of the cell, as far as they are not
+	     */
+	    private long explainMissing(int cell, long values)
+	    {
+	        long reason = 0;
+	        for (long rest = values & grid.allValues & ~domains[cell]; rest != 0; rest &= rest - 1)
+	        {
+	            reason |= reasons[cell * n + Long.numberOfTrailingZeros(rest)];
+	        }
+	        return reason;
+	    }
+	    
+	    /**
+	     * @return the levels that explain the domain of the cell
+	     */
+	    private long explain(int cell)
+	    {
+	        return explainMissing(cell, grid.allValues);
+	    }
+	    
+	    /**
+	     * @return the levels that explain why the problem is infeasible
+	     * @pre isInfeasible()
+	     */
+	    private long explainFailure()
+	    {
+	        for (int cell = 0; cell < cells; cell++)
+	        {
+	            if (domains[cell] == 0)
+	            {
+	                return explain(cell);
+	            }
+	        }
+	        return failureReason;
+	    }
+	    
+	    /**
+	     * Records the decision of a level of a backjumping search.
+	     * @param depth the level
+	     * @param cell the cell split
+	     * @param domain the half kept in the first branch
+	     */
+	    private void decide(int depth, int cell, long domain)
+	    {
+	        if (depth < pathCells.length)
+	        {
+	            pathCells[depth] = cell;
+	            pathDomains[depth] = domain;
+	        }
+	    }
+	    
+	    /**
+	     * Stores the decisions of a set of levels as a nogood, unless it
+	     * holds a level from 63 on, whose decisions are not recorded.
+	     * @param levels the levels that explain the failure of a branch
+	     */
+	    private void learn(long levels)
+	    {
+	        if (nogoods == null || levels < 0)
+	        {
+	            return;
+	        }
+	        int length = Long.bitCount(levels);
+	        if (length > nogoodCells.length)
+	        {
+	            return;
+	        }
+	        int j = 0;
+	        for (long rest = levels; rest != 0; rest &= rest - 1)
+	        {
+	            int level = Long.numberOfTrailingZeros(rest);
+	            nogoodCells[j] = pathCells[level];
+	            nogoodDomains[j] = pathDomains[level];
+	            j++;
+	        }
+	        nogoods.add(nogoodCells, nogoodDomains, length);
+	    }
+	    
+	    /**
+	     * Allocates what a backjumping search keeps.  Values removed
+	     * before this have no reason, since they follow from the board.
+	     */
+	    private void startBackjumping()
+	    {
+	        reasons = new long[cells * n];
+	        pathCells = new int[63];
+	        pathDomains = new long[63];
+	        if (nogoodCapacity > 0)
+	        {
+	            nogoods = new NogoodStore(nogoodCapacity, MAX_NOGOOD_LENGTH);
+	            nogoodCells = new int[MAX_NOGOOD_LENGTH];
+	            nogoodDomains = new long[MAX_NOGOOD_LENGTH];
+	        }
+	    }
+
+	    /**
+	     * splits the domain into 2 halves.  The cell keeps the lower
+	     * half of its values and the upper half is returned.
+	     * @return bitmask of the values removed from the cell
+	     */
+	    public long domainSplit(int cell){
+	        long current_domain = domains[cell];
+	        long splited_domain1 = 0;
+	        long rest = current_domain;
+	        for (int i = 0; i < Long.bitCount(current_domain)/2; i++){
+	            long lowest = Long.lowestOneBit(rest);
+	            splited_domain1 |= lowest;
+	            rest &= ~lowest;
+	        }
+	        domains[cell] = splited_domain1;
+	        return rest;
+	        }
+	    
+	    /**
+	     * Splits the domain into 2 halves like domainSplit, but the
+	     * cell keeps a random half of its values.
+	     * @return bitmask of the values removed from the cell
+	     */
+	    private long randomSplit(int cell)
+	    {
+	        long rest = domains[cell];
+	        long kept = 0;
+	        for (int size = Long.bitCount(rest), i = 0; i < size / 2; i++)
+	        {
+	            // keep the pick-th value still in rest
+	            long bits = rest;
+	            for (int pick = random.nextInt(size - i); pick > 0; pick--)
+	            {
+	                bits &= bits - 1;
+	            }
+	            long value = Long.lowestOneBit(bits);
+	            kept |= value;
+	            rest &= ~value;
+	        }
+	        domains[cell] = kept;
+	        return rest;
+	    }
+	    
+	    /**
+	     * Assigns a cell its least constraining value: the one that is in
+	     * the domains of the fewest peers, the lowest of them on a tie.
+	     * With RANDOM value order the value is picked at random instead.
+	     * @return bitmask of the other values of the cell
+	     */
+	    private long assignmentSplit(int cell)
+	    {
+	        long domain = domains[cell];
+	        long value;
+	        if (random != null)
+	        {
+	            long bits = domain;
+	            for (int pick = random.nextInt(Long.bitCount(domain)); pick > 0; pick--)
+	            {
+	                bits &= bits - 1;
+	            }
+	            value = Long.lowestOneBit(bits);
+	        }
+	        else
+	        {
+	            java.util.Arrays.fill(valueCounts, 0);
+	            for (int peer : peers[cell])
+	            {
+	                for (long rest = domains[peer] & domain; rest != 0; rest &= rest - 1)
+	                {
+	                    valueCounts[Long.numberOfTrailingZeros(rest)]++;
+	                }
+	            }
+	            value = 0;
+	            int fewest = Integer.MAX_VALUE;
+	            for (long rest = domain; rest != 0; rest &= rest - 1)
+	            {
+	                int d = Long.numberOfTrailingZeros(rest);
+	                if (valueCounts[d] < fewest)
+	                {
+	                    fewest = valueCounts[d];
+	                    value = 1L << d;
+	                }
+	            }
+	        }
+	        domains[cell] = value;
+	        return domain & ~value;
+	    }
+	    
+	    /**
+	     * Records the domain a cell has before a change so that
+	     * undoTo can put it back.
+	     * @param cell
+	     */
+	    private void saveDomain(int cell)
+	    {
+	        if (trailSize == trailCells.length)
+	        {
+	            trailCells = java.util.Arrays.copyOf(trailCells, 2 * trailSize);
+	            trailDomains = java.util.Arrays.copyOf(trailDomains, 2 * trailSize);
+	        }
+	        trailCells[trailSize] = cell;
+	        trailDomains[trailSize] = domains[cell];
+	        trailSize++;
+	    }
+	    
+	    /**
+	     * @return a mark that undoTo can later roll the domains back to
+	     */
+	    public int getTrailSize()
+	    {
+	        return trailSize;
+	    }
+	    
+	    /**
+	     * Restores every domain changed since the mark was taken.
+	     * @param mark a value previously returned by getTrailSize
+	     */
+	    public void undoTo(int mark)
+	    {
+	        while (trailSize > mark)
+	        {
+	            trailSize--;
+	            domains[trailCells[trailSize]] = trailDomains[trailSize];
+	        }
+	        tda.clear();
+	        events.clear();
+	        failed = false;
+	        failedUnit = -1;
+	        failureReason = 0;
+	    }
+
+
+	    public int[][] solve() throws InvalidSudokuBoardException {
+	        if (!search())
+	        {
+	            // only a bounded solve stops without an answer
+	            throw new InvalidSudokuBoardException("Search stopped: " + exceeded);
+	        }
+	        return domainsToBoard(domains);
+	    }
+	    
+	    /**
+	     * Searches for the solution, leaving it in the domains.
+	     * @return true if solved, false if a limit of a bounded
+	     * solve stopped the search first
+	     * @throws InvalidSudokuBoardException if there is no solution,
+	     * or more than one when checkUniqueness is set
+	     */
+	    private boolean search() throws InvalidSudokuBoardException
+	    {
+	        if (checkUniqueness)
+	        {
+	            int count = countSolutions(2);
+	            if (exceeded != null)
+	            {
+	                return false;
+	            }
+	            if (count == 0)
+	            {
+	                throw new InvalidSudokuBoardException("No solution");
+	            }
+	            if (count > 1)
+	            {
+	                throw new InvalidSudokuBoardException("Multiple solutions");
+	            }
+	            return true;
+	        }
+	        makeConsistent();
+	        boolean solved;
+	        if (parallelDepth > 0)
+	        {
+	            solved = solveInParallel();
+	        }
+	        else
+	        {
+	            if (backjumping)
+	            {
+	                startBackjumping();
+	            }
+	            solved = restarts != Restarts.NONE ? solveWithRestarts() : solveSequentially();
+	        }
+	        if (!solved)
+	        {
+	            if (exceeded != null)
+	            {
+	                return false;
+	            }
+	            throw new InvalidSudokuBoardException("No solution");
+	        }
+	        return true;
+	    }
+	    
+	    /**
+	     * Counts the solutions of this problem, reusing its trail to
+	     * backtrack out of each solution found.  If there is at least one
+	     * solution the problem is left holding the first.
+	     * @param limit the search stops once this many solutions are found
+	     * @return the number of solutions, at most limit; 0 without searching
+	     * if limit is not positive
+	     */
+	    public int countSolutions(int limit)
+	    {
+	        solutionCount = 0;
+	        firstSolution = null;
+	        if (limit <= 0)
+	        {
+	            return 0;
+	        }
+	        SudokuSolver.countSolutions(this, limit, 0);
+	        if (firstSolution != null)
+	        {
+	            System.arraycopy(firstSolution, 0, domains, 0, cells);
+	        }
+	        return solutionCount;
+	    }
+	    
+	    /**
+	     * Searches in runs that each end after a number of dead ends set by
+	     * the restart schedule, going back to the root between runs.  Only
+	     * the run that is let finish its tree can find that there is no
+	     * solution.
+	     * @return true if a solution was found
+	     * @pre the problem is consistent
+	     */
+	    private boolean solveWithRestarts()
+	    {
+	        int root = getTrailSize();
+	        double geometric = restartBase;
+	        for (long run = 1; ; run++)
+	        {
+	            runDeadEnds = 0;
+	            if (restarts == Restarts.LUBY)
+	            {
+	                runDeadEndLimit = restartBase * luby(run);
+	            }
+	            else
+	            {
+	                runDeadEndLimit = (long) Math.min(geometric, Long.MAX_VALUE);
+	                geometric *= 1.5;
+	            }
+	            restarting = false;
+	            if (solveSequentially())
+	            {
+	                break;
+	            }
+	            if (!restarting)
+	            {
+	                runDeadEndLimit = Long.MAX_VALUE;
+	                return false;
+	            }
+	            restartCount++;
+	            undoTo(root);
+	        }
+	        runDeadEndLimit = Long.MAX_VALUE;
+	        restarting = false;
+	        return true;
+	    }
+
+	    /**
+	     * @return true if a solution was found
+	     * @pre the problem is consistent
+	     */
+	    private boolean solveSequentially()
+	    {
+	        return reasons != null ? solveBackjumping(this, 0) : SudokuSolver.solve(this, 0);
+	    }
 
 	    /**
-	     * Checks every element in the arc's variable's domain
-	     * and eliminates any that are inconsistent.
-	     * If any are eliminated, it adds the proper arcs
-	     * back into the arc to do list.
-	     * @param arc
+	     * Searches the top parallelDepth levels of the tree as fork/join
+	     * tasks and leaves the first solution found in this problem.
+	     * @return true if a solution was found
 	     */
-	    private void checkArc(Arc arc) {
-	        Constraint con = arc.getConstraint();
-	        if (con.pruneDomain(arc))
+	    private boolean solveInParallel()
+	    {
+	        AtomicReference<long[]> solution = new AtomicReference<long[]>();
+	        stop = new AtomicBoolean();
+	        getForkJoinPool().invoke(new ParallelSearch(this, 0, solution));
+	        stop = null;
+	        if (solution.get() == null)
 	        {
-	            Variable var = arc.getVariable();
-	            List<Arc> arcsToAddBack = var.getArcsToAddBackToTDA(arc);
-	            tda.addAll(arcsToAddBack);
+	            return false;
 	        }
+	        System.arraycopy(solution.get(), 0, domains, 0, cells);
+	        return true;
 	    }
 	    
 	    /**
-	     * Adds all arcs that are separated from this variable by one arc
-	     * @param var
+	     * @return true if the current run of a restarting search is over,
+	     * another branch of a parallel search has already found a
+	     * solution, or a limit of a bounded solve has been exceeded
 	     */
-	    private void addArcsToTDAAfterSplit(Variable var) {
-	        assert(tda.isEmpty());
-	        
-	        for (Arc a : var.getArcs())
+	    private boolean isStopped()
+	    {
+	        return restarting || stop != null && stop.get() || isOverBudget();
+	    }
+	    
+	    /**
+	     * Checks the limits of a bounded solve, which costs a few
+	     * well predicted branches when there are none.  The first limit
+	     * found to be exceeded is kept in exceeded and also stops the
+	     * other branches of a parallel search.
+	     * @return true if the search should stop
+	     */
+	    private boolean isOverBudget()
+	    {
+	        if (exceeded == null)
 	        {
-	            Constraint c = a.getConstraint();
-	            if (c.getArc1() == a)
+	            if (nodeCount >= nodeLimit)
+	            {
+	                exceeded = SolveResult.Outcome.NODE_LIMIT_EXCEEDED;
+	            }
+	            else if (token != null && token.isCancelled())
+	            {
+	                exceeded = SolveResult.Outcome.CANCELLED;
+	            }
+	            else if (hasDeadline && System.nanoTime() - deadline >= 0)
 	            {
-	                tda.add(c.getArc2());
+	                exceeded = SolveResult.Outcome.DEADLINE_EXCEEDED;
 	            }
 	            else
 	            {
-	                tda.add(c.getArc1());
+	                return false;
+	            }
+	            if (stop != null)
+	            {
+	                stop.set(true);
 	            }
 	        }
-	        
-	        
+	        return true;
 	    }
 	    
 	    /**
-	     * Goes through every arc on the TDA and checks it.
+	     * @return the cell picked by the solver's variable ordering,
+	     * or -1 if every cell is decided
 	     */
-	    public void makeConsistent()
+	    public int chooseVariableToSplit()
 	    {
-	        while (!tda.isEmpty())
+	        return variableOrdering.chooseVariable(this);
+	    }
+	    
+	    /**
+	     * @param cell
+	     * @return the number of peers of the cell with more than one value left
+	     */
+	    public int degree(int cell)
+	    {
+	        int degree = 0;
+	        for (int peer : peers[cell])
 	        {
-	            Iterator<Arc> it = tda.iterator();
-	            Arc a = it.next();
-	            tda.remove(a);
-	            checkArc(a);
+	            if (Long.bitCount(domains[peer]) > 1)
+	            {
+	                degree++;
+	            }
 	        }
+	        return degree;
 	    }
-
+	    
+	    public long getNodeCount()
+	    {
+	        return nodeCount;
+	    }
+	    
+	    public long getRevisionCount()
+	    {
+	        return revisionCount;
+	    }
+	    
 	    /**
-	     * splits the domain into 2 sub problems, each contains half the domain of the original
-	     * domain. 
-	     * @return
+	     * Records that the search has reached a node at this depth.
+	     * @param depth
 	     */
-	    public Variable domainSplit(Variable var){
-	        Set<Integer> current_domain = var.getDomain();
-	        Set<Integer> splited_domain1 = new HashSet<Integer>();
-	        Iterator<Integer> it = current_domain.iterator();
-	        for (int i = 0; i< current_domain.size()/2; i++){
-	            int element = it.next();
-	            splited_domain1.add(element);
+	    private void reachDepth(int depth)
+	    {
+	        if (statistics && depth > maxDepth)
+	        {
+	            maxDepth = depth;
 	        }
-
-	        current_domain.removeAll(splited_domain1);
-	        
-	        
-	        var.setDomain(splited_domain1);
-	        if (splited_domain1.size() == 1)
+	    }
+	    
+	    private void countDeadEnd()
+	    {
+	        if (statistics)
 	        {
-	            Iterator<Integer> i = splited_domain1.iterator();
-	            var.setValue(i.next());
+	            deadEndCount++;
 	        }
-	        
-	        Variable otherSubProblem = new Variable(var.getRow(),var.getCol(),var.getValue());
-	        otherSubProblem.setDomain(current_domain);
-	        if (current_domain.size() ==1)
+	        if (unitWeights != null)
 	        {
-	            Iterator<Integer> i = current_domain.iterator();
-	            otherSubProblem.setValue(i.next());
+	            weighFailure();
 	        }
-	        
-	        return otherSubProblem;
+	        if (++runDeadEnds >= runDeadEndLimit)
+	        {
+	            restarting = true;
 	        }
+	    }
 	    
-	    public Set<Arc> getTda()
+	    /**
+	     * Adds weight to the units blamed for a dead end: the units of
+	     * every cell left without values, or else the unit with a digit
+	     * that had no place left.
+	     */
+	    private void weighFailure()
 	    {
-	        return tda;
-	    }
-
-
-	    public int[][] solve() throws InvalidSudokuBoardException {
-	        makeConsistent();
-	        SudokuProblem solution = SudokuSolver.solve(this);
-	        if (null == solution)
-	        {
-	            throw new InvalidSudokuBoardException("No solution");
-	        }
-	        for (int i = 0; i < N; i++)
+	        boolean found = false;
+	        for (int cell = 0; cell < cells; cell++)
 	        {
-	            for (int j = 0; j < N; j++)
+	            if (domains[cell] == 0)
 	            {
-	                Iterator<Integer> it = solution.variables[i][j].getDomain().iterator();
-	                int val = it.next();
-	                solution.variables[i][j].setValue(val); // TODO: i think we can get rid of this
+	                for (int u : grid.cellUnits[cell])
+	                {
+	                    unitWeights[u]++;
+	                }
+	                found = true;
 	            }
 	        }
-	        return variablesToBoard(solution.variables);
+	        if (!found && failedUnit >= 0)
+	        {
+	            unitWeights[failedUnit]++;
+	        }
 	    }
 	    
-	    public SudokuProblem split()
+	    /**
+	     * @param cell
+	     * @return the sum of the weights of the row, column and block of
+	     * the cell, or 3 if the units are not weighted
+	     */
+	    public long weightedDegree(int cell)
 	    {
-	        return splitOn(chooseVariableToSplit());
+	        if (unitWeights == null)
+	        {
+	            return grid.cellUnits[cell].length;
+	        }
+	        long weight = 0;
+	        for (int u : grid.cellUnits[cell])
+	        {
+	            weight += unitWeights[u];
+	        }
+	        return weight;
 	    }
-
-
-	    public Variable chooseVariableToSplit()
+	    
+	    /**
+	     * Adds the counters of a problem that searched a branch of this
+	     * one on another thread, and the limit that stopped it if any.
+	     * @param other
+	     */
+	    private void addStatistics(SudokuProblem other)
 	    {
-	        Variable v = null;
-	        for (int i = 0; i < N; i++)
+	        nodeCount += other.nodeCount;
+	        revisionCount += other.revisionCount;
+	        pruneCount += other.pruneCount;
+	        splitCount += other.splitCount;
+	        maxDepth = Math.max(maxDepth, other.maxDepth);
+	        deadEndCount += other.deadEndCount;
+	        restartCount += other.restartCount;
+	        if (exceeded == null)
 	        {
-	            for (int j = 0; j < N; j++)
-	            {
-	                if (variables[i][j].getDomain().size() > 1)
-	                {
-	                    return variables[i][j];
-	                }
-	            }
+	            exceeded = other.exceeded;
 	        }
-	        assert(v != null);
-	        return v;
 	    }
 
 
 	    /**
-	     * Splits the entire sudoku problem.  The variable passed in's domain
-	     * is split in half.  The original sudoku problem is mutated to have
-	     * a variable with half of that domain, and a new child problem is
-	     * created with a variable whose domain is the other half.
-	     * Please ensure that the variable has more than one element in its
+	     * Splits the sudoku problem in place.  The cell passed in keeps
+	     * half of its domain, or a single value with ASSIGNMENT branching,
+	     * and the rest is returned so that the caller can try it after
+	     * undoing this branch.
+	     * Please ensure that the cell has more than one element in its
 	     * domain before trying to split.
-	     * @param var is a reference to an actual variable of this sudoku problem.
-	     * @return
+	     * @param cell
+	     * @return bitmask of the values that were removed
 	     * @Pre arc consistency has been run
 	     * @Pre the domain has more than one element
 	     */
-	    public SudokuProblem splitOn(Variable var)
+	    public long splitOn(int cell)
 	    {
-	        assert(var.getDomain().size() > 1);
+	        assert(Long.bitCount(domains[cell]) > 1);
 	        assert(tda.isEmpty());
 	        
-	        // assumes an implementation of domainSplit that will return a variable
-	        Variable childVar = domainSplit(var);
-	        Set<Integer> thisDomain = var.getDomain();
-	        Set<Integer> childDomain = childVar.getDomain();
-	        Set<Integer> tempDomain = null;
-	        
-	        // deal with child problem
-	        SudokuProblem childSp = null;
-	        tempDomain = thisDomain;
-	        var.setDomain(childDomain);
-	        if (childDomain.size() == 1)
-	        {
-	            var.setValue(childDomain.iterator().next());
-	        }
-	        childSp = sudokuProblemWithVariables(variables);
-	        childSp.tda.clear();
-	        Arc a = var.getArcs().get(0); // don't forget to add this to tda later
-	        int aId = a.getId();
-	        int row = var.getRow();
-	        int col = var.getCol();
-	        Arc childArc = null;
-	        for (Arc arc : childSp.getVariables()[row][col].getArcs())
-	        {
-	            if (arc.getId() == aId)
-	            {
-	                childArc = arc;
-	                break;
-	            }
+	        if (statistics)
+	        {
+	            splitCount++;
 	        }
-	        childSp.addArcsToTDAAfterSplit(childArc.getVariable());
-	        
-	        // deal with this problem
-	        var.setDomain(tempDomain);
-	        if (tempDomain.size() == 1)
+	        saveDomain(cell);
+	        long otherHalf;
+	        if (branching == Branching.ASSIGNMENT)
 	        {
-	            var.setValue(tempDomain.iterator().next());
+	            otherHalf = assignmentSplit(cell);
 	        }
-	        addArcsToTDAAfterSplit(var);
-	        
+	        else
+	        {
+	            otherHalf = random != null ? randomSplit(cell) : domainSplit(cell);
+	        }
+	        queueChangedCell(cell);
+	        return otherHalf;
+	    }
+	    
+	    /**
+	     * Narrows the domain of a cell, typically to the other half
+	     * of a split after undoing the first one.
+	     * @param cell
+	     * @param domain bitmask of the values to keep
+	     */
+	    public void restrictDomain(int cell, long domain)
+	    {
+	        assert(tda.isEmpty());
 	        
-	        return childSp;
+	        saveDomain(cell);
+	        domains[cell] = domain;
+	        queueChangedCell(cell);
 	    }
 	    
 
-	    public Variable[][] getVariables()
+	    public long[] getDomains()
 	    {
-	        return variables;
+	        return domains;
 	    }
 	    
 	    
 	    public boolean isInfeasible() {
-	        boolean emptyDomain = false;
-	        for (int i = 0; i < N; i++)
+	        if (failed)
 	        {
-	            for (int j = 0; j < N; j++)
-	            {
-	                if (variables[i][j].isDomainEmpty())
-	                {
-	                    emptyDomain = true;
-	                    break;
-	                }
-	            }
-	            if (emptyDomain)
+	            return true;
+	        }
+	        for (int cell = 0; cell < cells; cell++)
+	        {
+	            if (domains[cell] == 0)
 	            {
-	                break;
+	                return true;
 	            }
 	        }
-	        return emptyDomain;
+	        return false;
 	    }
 	    
 	    public boolean isSolved() {
-	        boolean isSolved = true;
-	        for (int i = 0; i < N; i++)
+	        for (int cell = 0; cell < cells; cell++)
 	        {
-	            for (int j = 0; j < N; j++)
-	            {
-	                if (variables[i][j].getDomain().size() != 1)
-	                {
-	                    isSolved = false;
-	                    break;
-	                }
-	            }
-	            if (!isSolved)
+	            if (!isSingleton(domains[cell]))
 	            {
-	                break;
+	                return false;
 	            }
 	        }
-	        return isSolved;
+	        return true;
 	        
 	    }
 
@@ -513,324 +2249,269 @@ public class SudokuSolver {
 	
 	
 
-    class Variable
+    /**
+     * The constraint graph of a board of one size.  It never changes, so
+     * it is built once per size and shared by every SudokuProblem.  Cells
+     * are numbered row * n + col.
+     * 
+     * peers[c] lists the cells that must differ from cell c.  Arc number
+     * c * peerCount + k checks the domain of cell c against peers[c][k].
+     */
+    static final class Grid
     {
-        private List<Arc> arcs;
-        private Set<Integer> domain;
-        private int row;
-        private int col;
-        private int value;
-        private int id;
-        
+        final int blockWidth;
+        final int n;
+        final int cells;
+        /**
+         * Number of other cells that share a row, column or block with a cell.
+         */
+        final int peerCount;
+        /**
+         * Domain bitmask holding every digit from 1 to n.
+         */
+        final long allValues;
+        final int[][] peers;
+        /**
+         * reverseArc[a] is the arc of the same constraint going the other way.
+         */
+        final int[] reverseArc;
+        /**
+         * units[u] lists the cells of row u, column u - n or block u - 2n.
+         */
+        final int[][] units;
+        /**
+         * cellUnits[c] holds the row, column and block units of cell c.
+         */
+        final int[][] cellUnits;
         
-        public int getId()
-        {
-            return id;
-        }
-    
-        public void setId(int id)
-        {
-            this.id = id;
-        }
-    
-        public Variable(List<Arc> arcs, Set<Integer> domain, int row, int col,
-                int value, int id)
-        {
-            super();
-            this.arcs = arcs;
-            this.domain = domain;
-            this.row = row;
-            this.col = col;
-            this.value = value;
-            this.id = id;
-        }
-    
-        public Variable(List<Arc> arcs, Set<Integer> domain, int row, int col,
-                int value)
-        {
-            super();
-            this.arcs = arcs;
-            this.domain = domain;
-            this.row = row;
-            this.col = col;
-            this.value = value;
-        }
-    
-        public Variable(int row, int col, int value)
+        /**
+         * Fills in the unit and peer tables and pairs up
+         * every arc with its reverse.
+         * @param blockWidth
+         */
+        Grid(int blockWidth)
         {
-            arcs = new ArrayList<Arc>();
-            domain = new HashSet<Integer>();
-            if (0 == value)
+            this.blockWidth = blockWidth;
+            n = blockWidth * blockWidth;
+            cells = n * n;
+            peerCount = 2 * (n - 1) + (blockWidth - 1) * (blockWidth - 1);
+            allValues = n == 64 ? -1L : (1L << n) - 1;
+            peers = new int[cells][peerCount];
+            reverseArc = new int[cells * peerCount];
+            units = new int[3 * n][n];
+            cellUnits = new int[cells][3];
+            
+            int[] unitSizes = new int[3 * n];
+            for (int i = 0; i < n; i++)
             {
-                for (int i = 1; i <= 9; i++) 
+                for (int j = 0; j < n; j++)
                 {
-                    domain.add(i);
+                    int cell = i * n + j;
+                    int block = blockWidth * (i / blockWidth) + j / blockWidth;
+                    cellUnits[cell][0] = i;
+                    cellUnits[cell][1] = n + j;
+                    cellUnits[cell][2] = 2 * n + block;
+                    for (int u : cellUnits[cell])
+                    {
+                        units[u][unitSizes[u]++] = cell;
+                    }
                 }
             }
-            else
+            
+            // the peers of a cell are the other members of its units, each
+            // counted once, in increasing order
+            boolean[] isPeer = new boolean[cells];
+            for (int cell = 0; cell < cells; cell++)
             {
-                domain.add(value);
+                for (int u : cellUnits[cell])
+                {
+                    for (int other : units[u])
+                    {
+                        isPeer[other] = other != cell;
+                    }
+                }
+                int k = 0;
+                for (int other = 0; other < cells; other++)
+                {
+                    if (isPeer[other])
+                    {
+                        peers[cell][k++] = other;
+                        isPeer[other] = false;
+                    }
+                }
+                assert(k == peerCount);
+            }
+            
+            for (int cell = 0; cell < cells; cell++)
+            {
+                for (int k = 0; k < peerCount; k++)
+                {
+                    int peer = peers[cell][k];
+                    int kk = java.util.Arrays.binarySearch(peers[peer], cell);
+                    reverseArc[cell * peerCount + k] = peer * peerCount + kk;
+                }
             }
-            this.row = row;
-            this.col = col;
-            this.value = value;
-        }
-        
-        public List<Arc> getArcs()
-        {
-            return arcs;
-        }
-    
-        public void setArcs(List<Arc> arcs)
-        {
-            this.arcs = arcs;
-        }
-    
-        public int getRow()
-        {
-            return row;
-        }
-    
-        public void setRow(int row)
-        {
-            this.row = row;
-        }
-    
-        public int getCol()
-        {
-            return col;
-        }
-    
-        public void setCol(int col)
-        {
-            this.col = col;
-        }
-    
-        public int getValue()
-        {
-            return value;
-        }
-    
-        public void setValue(int value)
-        {
-            this.value = value;
-        }
-    
-        public void setDomain(Set<Integer> domain)
-        {
-            this.domain = domain;
-        }
-    
-        public Set<Integer> getDomain()
-        {
-            return domain;
         }
+    }
     
+    /**
+     * Fixed-capacity FIFO of ids in the range [0, capacity) that holds
+     * each id at most once.  Adding an id that is already queued does
+     * nothing, so the queue can never overflow.
+     */
+    static final class WorkQueue
+    {
+        private final int[] items;
         /**
-         * Finds the arcs that should be added back into the TDA.
-         * These are the arcs that are attached to the same 
-         * @param arcToIgnore
-         * @return
+         * Bit i is set while id i is in the queue.
          */
-        public List<Arc> getArcsToAddBackToTDA(Arc arcToIgnore)
-        {
-            List<Arc> arcsToAdd = new ArrayList<Arc>();
-           for (int i = 0; i < arcs.size(); i++)
-           {
-               Arc a = arcs.get(i);
-               if (a != arcToIgnore)
-               {
-                   Constraint con = a.getConstraint();
-                   Arc a1 = con.getArc1();
-                   Arc a2 = con.getArc2();
-                   if (a1 == a)
-                   {
-                       arcsToAdd.add(a2);
-                   }
-                   else
-                   {
-                       arcsToAdd.add(a1);
-                   }
-               }
-           }
-           return arcsToAdd;
-        }
+        private final long[] queued;
+        private int head;
+        private int size;
         
-        public boolean isDomainEmpty()
+        public WorkQueue(int capacity)
         {
-            return domain.isEmpty();
+            items = new int[capacity];
+            queued = new long[(capacity + 63) / 64];
         }
         
-        public void addArc(Arc a)
+        /**
+         * Adds an id to the back of the queue unless it is already queued.
+         * @param id
+         */
+        public void add(int id)
         {
-            arcs.add(a);
+            long bit = 1L << id;
+            if ((queued[id >>> 6] & bit) != 0)
+            {
+                return;
+            }
+            queued[id >>> 6] |= bit;
+            int tail = head + size;
+            if (tail >= items.length)
+            {
+                tail -= items.length;
+            }
+            items[tail] = id;
+            size++;
         }
         
-    
-    }
-    
-    
-    class Arc
-    {
-        private Variable variable;
-        private Constraint constraint;
-        private int id;
-        
-        public int getId()
+        /**
+         * Removes and returns the id at the front of the queue.
+         * @pre the queue is not empty
+         */
+        public int poll()
         {
+            assert(size > 0);
+            int id = items[head];
+            queued[id >>> 6] &= ~(1L << id);
+            head++;
+            if (head == items.length)
+            {
+                head = 0;
+            }
+            size--;
             return id;
         }
-
-        public void setId(int id)
-        {
-            this.id = id;
-        }
-
-        public Arc(){}
         
-        public Arc(Variable variable, Constraint constraint, int id)
+        public boolean isEmpty()
         {
-            super();
-            this.variable = variable;
-            this.constraint = constraint;
-            this.id = id;
+            return size == 0;
         }
-
-        public Arc(Variable variable, Constraint constraint)
-        {
-            super();
-            this.variable = variable;
-            this.constraint = constraint;
-        }
-        public Variable getVariable()
-        {
-            return variable;
-        }
-        public void setVariable(Variable variable)
+        
+        public int size()
         {
-            this.variable = variable;
+            return size;
         }
-        public Constraint getConstraint()
+        
+        public int capacity()
         {
-            return constraint;
+            return items.length;
         }
-        public void setConstraint(Constraint constraint)
+        
+        public void clear()
         {
-            this.constraint = constraint;
+            while (size > 0)
+            {
+                poll();
+            }
+            head = 0;
         }
     }
     
-    class Constraint
+    /**
+     * One branch of a parallel search.  Above the parallel depth each
+     * split forks the other half of the domain as a sibling task on a
+     * copy of the problem; below it the branch is searched sequentially.
+     * The first task to find a solution publishes it and raises the stop
+     * flag, which every other task checks at each node.
+     */
+    private static final class ParallelSearch extends RecursiveAction
     {
-
-        private Arc arc1;
-        private Arc arc2;
-        
-        public Constraint(){}
+        private static final long serialVersionUID = 1L;
+        private final SudokuProblem sp;
+        private final int depth;
+        private final AtomicReference<long[]> solution;
         
-        public Constraint(Arc arc1, Arc arc2)
-        {
-            super();
-            this.arc1 = arc1;
-            this.arc2 = arc2;
-        }
-
-        public void setArc1(Arc arc1)
-        {
-            this.arc1 = arc1;
-        }
-
-        public void setArc2(Arc arc2)
+        ParallelSearch(SudokuProblem sp, int depth, AtomicReference<long[]> solution)
         {
-            this.arc2 = arc2;
+            this.sp = sp;
+            this.depth = depth;
+            this.solution = solution;
         }
-
-        /**
-         * Prunes the domain of the passed arc
-         * @param arcUnderConsideration
-         */
-        public boolean pruneDomain(Arc arcUnderConsideration)
+        
+        protected void compute()
         {
-            Arc otherArc = null;
-            if (arc1 == arcUnderConsideration) 
+            if (sp.isStopped())
             {
-                otherArc = arc2;
-            } 
-            else if (arc2 == arcUnderConsideration) 
-            {
-                otherArc = arc1;
-            }
-            else
-            {
-                throw new RuntimeException("arc doesn't exist in this constraint");
+                return;
             }
-            Set<Integer> domainToPrune = arcUnderConsideration.getVariable().getDomain();
-            
-            Set<Integer> domainToCheck = otherArc.getVariable().getDomain();
-            
-            
-            ArrayList<Integer> elementsToPrune = new ArrayList<Integer>();
-            for (Integer pruneElem : domainToPrune)
+            if (depth >= sp.parallelDepth)
             {
-                boolean elementIsValid = false;
-                for (Integer checkElem : domainToCheck)
-                {
-                    if (!elementIsValid)
-                    {
-                        elementIsValid = pruneElem.intValue() != checkElem.intValue();
-                    }
-                    else
-                    {
-                        break;
-                    }
-                }
-                
-                if (!elementIsValid)
+                if (SudokuSolver.solve(sp, depth))
                 {
-                    elementsToPrune.add(pruneElem);
+                    publish();
                 }
+                return;
             }
-            for (Integer elem : elementsToPrune)
+            sp.nodeCount++;
+            sp.reachDepth(depth);
+            sp.makeConsistent();
+            if (sp.isSolved())
             {
-                domainToPrune.remove(elem);
+                publish();
+                return;
             }
-            if (domainToPrune.size() == 1)
+            if (sp.isInfeasible())
             {
-                java.util.Iterator<Integer> it = domainToPrune.iterator();
-                arcUnderConsideration.getVariable().setValue(it.next());
+                sp.countDeadEnd();
+                return;
             }
-            return elementsToPrune.size() > 0;
+            int cell = sp.chooseVariableToSplit();
+            SudokuProblem sibling = sp.copy();
+            long otherHalf = sp.splitOn(cell);
+            sibling.restrictDomain(cell, otherHalf);
+            ParallelSearch forked = new ParallelSearch(sibling, depth + 1, solution);
+            forked.fork();
+            new ParallelSearch(sp, depth + 1, solution).compute();
+            forked.join();
+            sp.addStatistics(sibling);
         }
         
-        public Arc getArc1()
-        {
-            return arc1;
-        }
-
-        public Arc getArc2()
-        {
-            return arc2;
-        }
-
-        /**
-         * Get the arcs of the constraint to get to the varaibles
-         * say the variable indecies 
-         */
-        public String toString()
+        private void publish()
         {
-            String arc1_index = "("+arc1.getVariable().getRow()+","+arc1.getVariable().getCol()+")";
-            String arc2_index = "("+arc2.getVariable().getRow()+","+arc2.getVariable().getCol()+")";
-            return arc1_index + " <> " + arc2_index;
+            if (solution.compareAndSet(null, sp.domains.clone()))
+            {
+                sp.stop.set(true);
+            }
         }
-
-
     }
     
-    class InvalidSudokuBoardException extends Exception
+    public static class InvalidSudokuBoardException extends Exception
     {
         public InvalidSudokuBoardException(){super();}
         public InvalidSudokuBoardException(String msg){super(msg);}
     }
 
 
-}
+}
\ No newline at end of file
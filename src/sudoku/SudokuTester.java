@@ -1,6 +1,13 @@
 package sudoku;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * A test script that will be used to test your code.
@@ -20,6 +27,7 @@ public class SudokuTester {
 	 */
 	public static void main(String[] argv) throws java.io.IOException {
 		SudokuSolver acSolver = new SudokuSolver();
+		acSolver.setCheckUniqueness(true);
 		System.out.println(acSolver.authors() + "\n");
 
 		/** Easy Sudokus */
@@ -62,6 +70,115 @@ public class SudokuTester {
 		test(acSolver, "noSolutions", false, false); // Time: bonus 0s
 		// This Sudoku is invalid because it has multiple (two) solutions - exception should be thrown.
 		test(acSolver, "twoSolutions", false, false); // Time: bonus 0s
+
+		/** Size of the search tree under each variable ordering */
+		compareOrderings("goldenNugget");
+		compareOrderings("minimum1");
+		compareOrderings("minimum50");
+
+		/** Work done by each propagation mode */
+		comparePropagation("goldenNugget");
+		comparePropagation("minimum1");
+		comparePropagation("minimum50");
+
+		/** Counters of the search on the hardest boards */
+		printStatistics("goldenNugget");
+		printStatistics("minimum1");
+		printStatistics("nearWorstCase");
+
+		/** Solution cache hit on a rotated and relabelled copy */
+		testCache("goldenNugget");
+
+		/** Bounded solves */
+		testBudget("goldenNugget", 50);
+		testBudget("goldenNugget", 1000);
+
+		/** Interactive play */
+		testSession("goldenNugget");
+
+		/** Parallel generation, including an empty batch */
+		testGenerator(0);
+		testGenerator(3);
+
+		/** Digit-plane bitboards, including the board left out above */
+		SudokuSolver bitboardSolver = new SudokuSolver();
+		bitboardSolver.setCheckUniqueness(true);
+		bitboardSolver.setEngine(SudokuSolver.BITBOARD_ENGINE);
+		System.out.println("Bitboard kernel: " + BitboardSolver.getKernelName() + "\n");
+		test(bitboardSolver, "minimum50", true, false);
+		test(bitboardSolver, "nearWorstCase", true, false);
+		test(bitboardSolver, "noSolutions", false, false);
+		test(bitboardSolver, "twoSolutions", false, false);
+
+		/** Dancing Links (exact cover) on the boards above */
+		SudokuSolver dlxSolver = new SudokuSolver();
+		dlxSolver.setCheckUniqueness(true);
+		dlxSolver.setEngine(SudokuSolver.DANCING_LINKS_ENGINE);
+		testBoards(dlxSolver);
+
+		/** Fork/join search over the top levels of the search tree */
+		SudokuSolver parallelSolver = new SudokuSolver();
+		parallelSolver.setCheckUniqueness(true);
+		parallelSolver.setParallelDepth(3);
+		testBoards(parallelSolver);
+
+		/** Memory-mapped corpus files, read sequentially and split across threads */
+		testMappedReader(MappedBoardReader.Format.DOTS);
+		testMappedReader(MappedBoardReader.Format.COMMA);
+	}
+
+	/**
+	 * Runs test, without printing the boards, on every bundled board the AC solver is tested on above, including the two invalid ones.
+	 * 
+	 * @param solver Sudoku solver, which should check uniqueness.
+	 * 
+	 * @throws IOException
+	 */
+	private static void testBoards(SudokuSolver solver) throws IOException {
+		String[] boardNames = { "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster", "tarek071223170000-052", "goldenNugget",
+				"minimum1", "minimum50" };
+		for (String boardName : boardNames)
+			test(solver, boardName, true, false);
+		test(solver, "noSolutions", false, false);
+		test(solver, "twoSolutions", false, false);
+	}
+
+	/**
+	 * Prints the number of search nodes the solver visits on a board with row-major, minimum-remaining-values and dom/wdeg variable ordering,
+	 * with dom/wdeg together with random value order and restarts, with assignment instead of halving branching, and with backjumping and
+	 * nogood learning.
+	 * 
+	 * @param boardName name of the Sudoku board.
+	 * 
+	 * @throws IOException
+	 */
+	private static void compareOrderings(String boardName) throws IOException {
+		System.out.println("Board '" + boardName + "' nodes: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		String[] names = { "row-major", "MRV/degree", "dom/wdeg", "dom/wdeg, random values, Luby restarts", "MRV/degree, assignment branching",
+				"MRV/degree, backjumping and nogoods" };
+		SudokuSolver[] solvers = new SudokuSolver[names.length];
+		for (int i = 0; i < solvers.length; i++)
+			solvers[i] = new SudokuSolver();
+		solvers[0].setVariableOrdering(SudokuSolver.ROW_MAJOR);
+		solvers[2].setVariableOrdering(SudokuSolver.DOM_WDEG);
+		solvers[3].setVariableOrdering(SudokuSolver.DOM_WDEG);
+		solvers[3].setValueOrder(SudokuSolver.ValueOrder.RANDOM);
+		solvers[3].setRandomSeed(1);
+		solvers[3].setRestarts(SudokuSolver.Restarts.LUBY);
+		solvers[4].setBranching(SudokuSolver.Branching.ASSIGNMENT);
+		solvers[5].setBackjumping(true);
+		for (int i = 0; i < solvers.length; i++) {
+			SudokuSolver solver = solvers[i];
+			SudokuSolver.SudokuProblem sp = solver.problemWithBoard(problem);
+			try {
+				sp.solve();
+				System.out.println(names[i] + ": " + sp.getNodeCount());
+			} catch (Exception e) {
+				System.out.println(names[i] + ": crashed " + e);
+			}
+		}
+		System.out.println();
 	}
 
 	/**
@@ -93,6 +210,230 @@ public class SudokuTester {
 		System.out.println("Time: " + (System.currentTimeMillis() - time) / 1000 + " seconds\n");
 	}
 
+	/**
+	 * Prints the number of revisions the solver does on a board with AC-3 and with event-driven propagation.
+	 * 
+	 * @param boardName name of the Sudoku board.
+	 * 
+	 * @throws IOException
+	 */
+	private static void comparePropagation(String boardName) throws IOException {
+		System.out.println("Board '" + boardName + "' revisions: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		for (SudokuSolver.Propagation propagation : SudokuSolver.Propagation.values()) {
+			SudokuSolver solver = new SudokuSolver();
+			solver.setPropagation(propagation);
+			SudokuSolver.SudokuProblem sp = solver.problemWithBoard(problem);
+			try {
+				sp.solve();
+				System.out.println(propagation + ": " + sp.getRevisionCount());
+			} catch (Exception e) {
+				System.out.println(propagation + ": crashed " + e);
+			}
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Prints the search statistics of solving a board with the default settings.
+	 * 
+	 * @param boardName name of the Sudoku board.
+	 * 
+	 * @throws IOException
+	 */
+	private static void printStatistics(String boardName) throws IOException {
+		System.out.println("Board '" + boardName + "' statistics: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		try {
+			System.out.println(new SudokuSolver().solveWithStatistics(problem));
+		} catch (Exception e) {
+			System.out.println("crashed " + e);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Solves a board through a solution cache, then a copy of it rotated by 90 degrees with its digits shifted by one, which should be answered
+	 * from the cache with the rotated and shifted solution.
+	 * 
+	 * @param boardName name of the Sudoku board.
+	 * 
+	 * @throws IOException
+	 */
+	private static void testCache(String boardName) throws IOException {
+		System.out.println("Board '" + boardName + "' cache: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		int[][] solution = SudokuUtil.readInBoard(boardName + "Solution.sud", 9);
+		int[][] rotatedProblem = new int[9][9];
+		int[][] rotatedSolution = new int[9][9];
+		for (int i = 0; i < 9; i++)
+			for (int j = 0; j < 9; j++) {
+				rotatedProblem[j][8 - i] = problem[i][j] == 0 ? 0 : problem[i][j] % 9 + 1;
+				rotatedSolution[j][8 - i] = solution[i][j] % 9 + 1;
+			}
+		SolutionCache cache = new SolutionCache(SudokuSolver.ARC_CONSISTENCY_ENGINE, 100);
+		SudokuSolver solver = new SudokuSolver();
+		solver.setEngine(cache);
+		try {
+			solver.solve(problem);
+			long time = System.nanoTime();
+			boolean correct = match(solver.solve(rotatedProblem), rotatedSolution);
+			time = System.nanoTime() - time;
+			System.out.println((correct ? "CORRECT" : "INCORRECT") + ", " + cache.getHits() + " hit, " + cache.getMisses() + " miss, "
+					+ time / 1000 + " us");
+		} catch (Exception e) {
+			System.out.println("crashed " + e);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Prints the outcome and statistics of solving a board with a limit on the number of search nodes.
+	 * 
+	 * @param boardName name of the Sudoku board;
+	 * @param maxNodes the most search nodes the solver may visit.
+	 * 
+	 * @throws IOException
+	 */
+	private static void testBudget(String boardName, long maxNodes) throws IOException {
+		System.out.println("Board '" + boardName + "' within " + maxNodes + " nodes: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		try {
+			System.out.println(new SudokuSolver().solve(problem, maxNodes));
+		} catch (Exception e) {
+			System.out.println("crashed " + e);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Plays a board in a session: fills every empty cell with its solution in row order, except that the first empty cell first gets a wrong
+	 * digit which is erased again near the end, and prints the status after the interesting moves.
+	 * 
+	 * @param boardName name of the Sudoku board.
+	 * 
+	 * @throws IOException
+	 */
+	private static void testSession(String boardName) throws IOException {
+		System.out.println("Board '" + boardName + "' session: ");
+		int[][] problem = SudokuUtil.readInBoard(boardName + ".sud", 9);
+		int[][] solution = SudokuUtil.readInBoard(boardName + "Solution.sud", 9);
+		SudokuSession session = new SudokuSession(new SudokuSolver(), problem);
+		int first = 0;
+		while (problem[first / 9][first % 9] != 0)
+			first++;
+		int row = first / 9, col = first % 9;
+		System.out.println("wrong digit: " + session.assign(row, col, solution[row][col] % 9 + 1));
+		long time = System.nanoTime();
+		for (int i = 0; i < 9; i++)
+			for (int j = 0; j < 9; j++)
+				if (problem[i][j] == 0 && (i != row || j != col))
+					session.assign(i, j, solution[i][j]);
+		System.out.println("all but one filled: " + session.getStatus());
+		System.out.println("wrong digit erased: " + session.unassign(row, col));
+		System.out.println("candidates left: " + Long.bitCount(session.getCandidates(row, col)));
+		System.out.println("last digit: " + session.assign(row, col, solution[row][col]));
+		time = System.nanoTime() - time;
+		System.out.println("moves took " + time / 1000 + " us");
+		System.out.println();
+	}
+
+	/**
+	 * Generates a batch of puzzles in parallel and checks that each has a unique solution.
+	 * 
+	 * @param count number of puzzles.
+	 */
+	private static void testGenerator(int count) {
+		System.out.println(count + " generated puzzles: ");
+		SudokuSolver checker = new SudokuSolver();
+		checker.setCheckUniqueness(true);
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			int[][][] puzzles = new PuzzleGenerator(checker, pool, 3).generate(count, 0, null, 42);
+			int unique = 0;
+			for (int[][] puzzle : puzzles) {
+				try {
+					checker.solve(puzzle);
+					unique++;
+				} catch (SudokuSolver.InvalidSudokuBoardException e) {
+					System.out.println("not unique: " + e.getMessage());
+				}
+			}
+			System.out.println(puzzles.length == count && unique == count ? "CORRECT" : "INCORRECT");
+		} catch (Exception e) {
+			System.out.println("crashed " + e);
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Writes the bundled boards many times over to a temporary file, with spaces and tabs around the numbers of the COMMA rows, and checks
+	 * that MappedBoardReader reads back the same boards in the same order, both sequentially and as a parallel stream.
+	 * 
+	 * @param format how the boards are written.
+	 * 
+	 * @throws IOException
+	 */
+	private static void testMappedReader(MappedBoardReader.Format format) throws IOException {
+		System.out.println(format + " corpus: ");
+		String[] boardNames = { "solved", "easy", "hard", "evil", "starBurstLeo", "easterMonster", "tarek071223170000-052", "goldenNugget",
+				"minimum1", "minimum50", "nearWorstCase", "noSolutions", "twoSolutions" };
+		List<int[][]> boards = new ArrayList<int[][]>();
+		for (int copy = 0; copy < 200; copy++)
+			for (String boardName : boardNames)
+				boards.add(SudokuUtil.readInBoard(boardName + ".sud", 9));
+		Path path = Files.createTempFile("boards", ".txt");
+		try {
+			Writer out = Files.newBufferedWriter(path);
+			try {
+				for (int[][] board : boards) {
+					if (format == MappedBoardReader.Format.DOTS)
+						out.write(SudokuUtil.formatBoardDots(board) + "\n");
+					else {
+						for (int[] row : board) {
+							for (int j = 0; j < row.length; j++)
+								out.write((j == 0 ? "\t" : j % 2 == 0 ? ",\t" : " , ") + row[j]);
+							out.write(" \n");
+						}
+						out.write("\n");
+					}
+				}
+			} finally {
+				out.close();
+			}
+			MappedBoardReader in = MappedBoardReader.open(path, format, 9);
+			try {
+				List<int[][]> sequential = in.boards(false).collect(Collectors.toList());
+				List<int[][]> parallel = in.boards(true).collect(Collectors.toList());
+				System.out.println(boards.size() + " boards: " + (match(boards, sequential) && match(boards, parallel) ? "CORRECT" : "INCORRECT"));
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			System.out.println("crashed " + e);
+		} finally {
+			Files.delete(path);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * @param boards1 Sudoku boards;
+	 * @param boards2 Sudoku boards.
+	 * 
+	 * @return true if given lists hold identical boards in the same order, false otherwise.
+	 */
+	private static boolean match(List<int[][]> boards1, List<int[][]> boards2) {
+		if (boards1.size() != boards2.size())
+			return false;
+		for (int i = 0; i < boards1.size(); i++)
+			if (!match(boards1.get(i), boards2.get(i)))
+				return false;
+		return true;
+	}
+
 	/**
 	 * @param board1 Sudoku board;
 	 * @param board2 Sudoku board.
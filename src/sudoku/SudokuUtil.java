@@ -60,32 +60,43 @@ public final class SudokuUtil {
 	 * @throws IOException
 	 */
 	public static int[][] readInBoardDots(String boardInFile, int bdSize) throws IOException {
-		int[][] board = new int[bdSize][bdSize];
 		BufferedReader in = new BufferedReader(new FileReader(boardInFile));
 		String str = in.readLine();
+		in.close();
 		if (str == null)
 			throw new IOException("Invalid input file.");
+		return parseBoardDots(str, bdSize);
+	}
+
+	/**
+	 * Parse a Sudoku board from a string of bdSize^2 characters: digits from 1 to 9 and dots (or zeros) for empty cells. Leading and trailing
+	 * white space is ignored.
+	 * 
+	 * @param str the board, row after row;
+	 * @param bdSize The number of rows and columns in the Sudoku board.
+	 * 
+	 * @return board The int[][] array representing the board in str.
+	 * 
+	 * @throws IOException if str is not a board of that size.
+	 */
+	public static int[][] parseBoardDots(String str, int bdSize) throws IOException {
+		int[][] board = new int[bdSize][bdSize];
 		str = str.trim(); // Get rid of leading and trailing white spaces
 		if (str.length() != bdSize * bdSize)
 			throw new IOException("Invalid input file.");
 		int index = 0;
-		char[] characters = str.toCharArray();
 		for (int row = 0; row < bdSize; row++)
 			for (int column = 0; column < bdSize; column++) {
-				if (characters[index] == '.')
+				char c = str.charAt(index);
+				if (c == '.' || c == '0')
 					board[row][column] = 0;
 				else {
-					try {
-						board[row][column] = Integer.valueOf(characters[index]) - 48;
-					} catch (NumberFormatException e) {
-						throw new IOException(e.getMessage());
-					}
+					board[row][column] = c - '0';
 					if ((board[row][column] < 1) || (board[row][column] > 9))
 						throw new IOException("Invalid input file");
 				}
 				index++;
 			}
-		in.close();
 		return board;
 	}
 
@@ -113,22 +124,45 @@ public final class SudokuUtil {
 	 * @return a formatted text view of the Sudoku board.
 	 */
 	public static String formatBoard(int[][] board) {
-		String r = "";
-		String hline = "";
-		for (int s = 0; s < 24; s++) {
-			hline += "-";
-		}
+		int blockWidth = (int) Math.round(Math.sqrt(board.length));
+		int width = String.valueOf(board.length).length(); // digits per cell
+		int lineLength = (width + 1) * board.length + 3 * (blockWidth - 1);
+		StringBuilder r = new StringBuilder((lineLength + 1) * (board.length + blockWidth));
 		for (int i = 0; i < board.length; i++) {
-			if (i > 0 && i % 3 == 0)
-				r += hline + "\n";
+			if (i > 0 && i % blockWidth == 0) {
+				for (int s = 0; s < lineLength; s++)
+					r.append('-');
+				r.append('\n');
+			}
 			for (int j = 0; j < board[i].length; j++) {
-				if (j > 0 && j % 3 == 0)
-					r += " | ";
-				r += board[i][j] + " ";
+				if (j > 0 && j % blockWidth == 0)
+					r.append(" | ");
+				int value = board[i][j];
+				int digits = 1;
+				for (int v = value; v >= 10; v /= 10)
+					digits++;
+				for (int pad = width - digits; pad > 0; pad--)
+					r.append(' ');
+				r.append(value).append(' ');
 			}
-			r += "\n";
+			r.append('\n');
 		}
-		return r;
+		return r.toString();
+	}
+
+	/**
+	 * Produces the one line format read by parseBoardDots: the digits of the board row after row, with dots for empty cells.
+	 * 
+	 * @param board the 2d int array representing the Sudoku board.
+	 * 
+	 * @return the board as a String of board.length^2 characters.
+	 */
+	public static String formatBoardDots(int[][] board) {
+		StringBuilder r = new StringBuilder(board.length * board.length);
+		for (int i = 0; i < board.length; i++)
+			for (int j = 0; j < board[i].length; j++)
+				r.append(board[i][j] == 0 ? '.' : (char) ('0' + board[i][j]));
+		return r.toString();
 	}
 
 	/**
@@ -140,14 +174,15 @@ public final class SudokuUtil {
 	 * @return a comma delimited text String of the Sudoku board.
 	 */
 	protected static String formatBoardComma(int[][] board) {
-		String r = "";
-		int i = 0, j = 0;
-		for (i = 0; i < board.length; i++) {
-			for (j = 0; j < board[i].length - 1; j++) {
-				r += board[i][j] + ",";
+		StringBuilder r = new StringBuilder(board.length * board.length * 3);
+		for (int i = 0; i < board.length; i++) {
+			for (int j = 0; j < board[i].length; j++) {
+				if (j > 0)
+					r.append(',');
+				r.append(board[i][j]);
 			}
-			r += board[i][j] + "\n";
+			r.append('\n');
 		}
-		return r;
+		return r.toString();
 	}
 }